@@ -0,0 +1,166 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Converts many small documents concurrently, each one on its own virtual
+ * thread when the JVM has them (Java 21 and later), else on a pool of platform
+ * threads.
+ *
+ * At most {@code maxInFlight} documents are parsed at once: {@link #submit}
+ * waits for a free slot and {@link #trySubmit} rejects the document. Parsers
+ * are reused from one document to the next. Cancelling the future of a
+ * document stops its parsing at the next line.
+ */
+public class GlossaBatchService implements AutoCloseable {
+
+	private final Supplier<? extends Parser> parsers;
+	private final Queue<Parser> idle = new ConcurrentLinkedQueue<>();
+	private final int maxInFlight;
+	private final Semaphore permits;
+	private final ExecutorService executor;
+
+	public GlossaBatchService(Supplier<? extends Parser> parsers, int maxInFlight) {
+		this(parsers, maxInFlight, newExecutor());
+	}
+
+	public GlossaBatchService(Supplier<? extends Parser> parsers, int maxInFlight, ExecutorService executor) {
+		if (maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+		this.parsers = parsers;
+		this.maxInFlight = maxInFlight;
+		this.permits = new Semaphore(maxInFlight);
+		this.executor = executor;
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor() is looked up at runtime, since
+	// the code is compiled for older JVMs
+	private static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				final Thread thread = new Thread(runnable, "glossa-batch");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Queues {@code lines} for parsing, waiting while {@code maxInFlight}
+	 * documents are already being parsed.
+	 */
+	public CompletableFuture<List<GlossaTag>> submit(List<String> lines) throws InterruptedException {
+		permits.acquire();
+		return start(lines);
+	}
+
+	/**
+	 * Queues {@code lines} for parsing, or throws a RejectedExecutionException
+	 * if {@code maxInFlight} documents are already being parsed.
+	 */
+	public CompletableFuture<List<GlossaTag>> trySubmit(List<String> lines) {
+		if (permits.tryAcquire() == false)
+			throw new RejectedExecutionException("Too many documents in flight");
+		return start(lines);
+	}
+
+	private CompletableFuture<List<GlossaTag>> start(List<String> lines) {
+		final CompletableFuture<List<GlossaTag>> result = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				List<GlossaTag> tags = null;
+				Throwable error = null;
+				try {
+					tags = parse(lines, result);
+				} catch (Throwable e) {
+					// Errors too, such as a StackOverflowError, or the future would
+					// never complete
+					error = e;
+				}
+				// Released first, so that inFlight() no longer counts a document
+				// whose future is done
+				permits.release();
+				if (error == null)
+					result.complete(tags);
+				else
+					result.completeExceptionally(error);
+			});
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			throw e;
+		}
+		return result;
+	}
+
+	private List<GlossaTag> parse(List<String> lines, CompletableFuture<List<GlossaTag>> result) {
+		Parser parser = idle.poll();
+		if (parser == null)
+			parser = parsers.get();
+
+		final GlossaTagCollector collector = new GlossaTagCollector();
+		final Peeker<String> wiki = PeekerUtils.peeker(lines);
+		// Stops early when the future has been cancelled
+		while (result.isDone() == false && parser.parseNext(wiki, collector))
+			;
+		// Only given back after a normal run: an exception may leave it broken
+		idle.offer(parser);
+		return collector.getTags();
+	}
+
+	/**
+	 * The number of documents submitted and not parsed yet.
+	 */
+	public int inFlight() {
+		return maxInFlight - permits.availablePermits();
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+}
@@ -0,0 +1,266 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * The parsed form of a document, kept line by line so that an edit only
+ * reparses the lines it touches. This requires a parser where the tags of a
+ * line only depend on that line, such as ParserMarkdown: lines are then
+ * separated by a "br" tag, exactly as when the whole document is parsed.
+ *
+ * Lines are stored in a balanced tree counting the lines and tags below each
+ * node, so that finding a line or a tag, and splicing lines, take a time
+ * logarithmic in the size of the document.
+ */
+public class GlossaDocument {
+
+	private final Parser parser;
+	// The lines in order, as a treap: a binary tree ordered by position, and
+	// balanced by random priorities, parents having the highest ones
+	private Line root;
+	private final Random priorities = new Random(0);
+	private final List<GlossaTag> tags = new Tags();
+
+	private static final class Line {
+
+		// The tags of the line followed by a "br". The "br" after the last line is
+		// not part of the document
+		private final List<GlossaTag> tags;
+		private final int priority;
+		private Line left;
+		private Line right;
+		// Lines and tags of this subtree
+		private int lineCount;
+		private int tagCount;
+
+		Line(List<GlossaTag> tags, int priority) {
+			this.tags = tags;
+			this.priority = priority;
+			update();
+		}
+
+		Line update() {
+			lineCount = lineCount(left) + 1 + lineCount(right);
+			tagCount = tagCount(left) + tags.size() + tagCount(right);
+			return this;
+		}
+	}
+
+	public GlossaDocument(Parser parser, List<String> lines) {
+		this.parser = parser;
+		replaceLines(0, 0, lines);
+	}
+
+	public int lineCount() {
+		return lineCount(root);
+	}
+
+	/**
+	 * Returns the tags of one line, without the "br" separating it from the next.
+	 */
+	public List<GlossaTag> getLineTags(int line) {
+		if (line < 0 || line >= lineCount())
+			throw new IndexOutOfBoundsException("line " + line + ", size " + lineCount());
+
+		Line node = root;
+		while (true) {
+			final int left = lineCount(node.left);
+			if (line < left) {
+				node = node.left;
+			} else if (line == left) {
+				return Collections.unmodifiableList(node.tags.subList(0, node.tags.size() - 1));
+			} else {
+				line -= left + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the lines from {@code from} to {@code to} (exclusive) with
+	 * {@code newLines}, and parses only those. Inserting lines is a replacement
+	 * of an empty range, deleting them a replacement with an empty list.
+	 */
+	public void replaceLines(int from, int to, List<String> newLines) {
+		if (from < 0 || to > lineCount() || from > to)
+			throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", size " + lineCount());
+
+		Line inserted = null;
+		for (String line : newLines) {
+			final List<GlossaTag> parsed = parser.parse(PeekerUtils.peeker(Collections.singletonList(line)));
+			final List<GlossaTag> lineTags = new ArrayList<>(parsed.size() + 1);
+			lineTags.addAll(parsed);
+			lineTags.add(new GlossaTag(GlossaTag.BR));
+			inserted = merge(inserted, new Line(lineTags, priorities.nextInt()));
+		}
+
+		final Line[] parts = new Line[2];
+		split(root, to, parts);
+		final Line after = parts[1];
+		split(parts[0], from, parts);
+		root = merge(merge(parts[0], inserted), after);
+	}
+
+	public void setLine(int line, String text) {
+		replaceLines(line, line + 1, Collections.singletonList(text));
+	}
+
+	/**
+	 * Returns the tags of the whole document, as {@link Parser#parse(Peeker)}
+	 * would. The list is a view kept up to date by the edits rather than a copy.
+	 */
+	public List<GlossaTag> getTags() {
+		return tags;
+	}
+
+	private static int lineCount(Line node) {
+		return node == null ? 0 : node.lineCount;
+	}
+
+	private static int tagCount(Line node) {
+		return node == null ? 0 : node.tagCount;
+	}
+
+	// Splits the lines of node into its first count lines, stored in result[0],
+	// and the others, stored in result[1]
+	private static void split(Line node, int count, Line[] result) {
+		if (node == null) {
+			result[0] = null;
+			result[1] = null;
+		} else if (lineCount(node.left) < count) {
+			split(node.right, count - lineCount(node.left) - 1, result);
+			node.right = result[0];
+			result[0] = node.update();
+		} else {
+			split(node.left, count, result);
+			node.left = result[1];
+			result[1] = node.update();
+		}
+	}
+
+	// The lines of first followed by the lines of second
+	private static Line merge(Line first, Line second) {
+		if (first == null)
+			return second;
+		if (second == null)
+			return first;
+		if (first.priority > second.priority) {
+			first.right = merge(first.right, second);
+			return first.update();
+		}
+		second.left = merge(first, second.left);
+		return second.update();
+	}
+
+	private class Tags extends AbstractList<GlossaTag> {
+
+		@Override
+		public int size() {
+			return root == null ? 0 : root.tagCount - 1;
+		}
+
+		@Override
+		public GlossaTag get(int index) {
+			if (index < 0 || index >= size())
+				throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+
+			Line node = root;
+			while (true) {
+				final int left = tagCount(node.left);
+				if (index < left) {
+					node = node.left;
+				} else if (index < left + node.tags.size()) {
+					return node.tags.get(index - left);
+				} else {
+					index -= left + node.tags.size();
+					node = node.right;
+				}
+			}
+		}
+
+		@Override
+		public Iterator<GlossaTag> iterator() {
+			return new TagIterator();
+		}
+	}
+
+	// Walks the lines in order, instead of looking up each tag from the root
+	private class TagIterator implements Iterator<GlossaTag> {
+
+		private int remaining = tags.size();
+		private final Deque<Line> pending = new ArrayDeque<>();
+		private List<GlossaTag> line = Collections.emptyList();
+		private int index;
+
+		TagIterator() {
+			pushLeft(root);
+		}
+
+		private void pushLeft(Line node) {
+			for (; node != null; node = node.left)
+				pending.push(node);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return remaining > 0;
+		}
+
+		@Override
+		public GlossaTag next() {
+			if (remaining == 0)
+				throw new NoSuchElementException();
+			if (index == line.size()) {
+				final Line next = pending.pop();
+				pushLeft(next.right);
+				line = next.tags;
+				index = 0;
+			}
+			remaining--;
+			return line.get(index++);
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa;
+
+/**
+ * Receives the content of a document as it is parsed, instead of a list of
+ * {@link GlossaTag}.
+ */
+public interface GlossaHandler {
+
+	/**
+	 * Text made of the chars of {@code source} between {@code start} and
+	 * {@code end} (exclusive), with the {@link GlossaStyle} bits set in
+	 * {@code styles}. The chars must be copied if they are kept after the call,
+	 * unless {@code source} is a String.
+	 */
+	void text(CharSequence source, int start, int end, int styles);
+
+	/**
+	 * A line break.
+	 */
+	void br();
+
+	/**
+	 * Start of an element holding other content, such as a list item.
+	 */
+	void openTag(String name);
+
+	void closeTag(String name);
+
+}
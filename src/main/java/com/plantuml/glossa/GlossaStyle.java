@@ -2,7 +2,7 @@
  * PlantUML : a free UML diagram generator
  * ========================================================================
  *
- * (C) Copyright 2009-2020, Arnaud Roques
+ * (C) Copyright 2009-2024, Arnaud Roques
  *
  * Project Info:  https://plantuml.com
  * 
@@ -31,56 +31,47 @@
  *
  * Original Author:  Arnaud Roques
  *
- *
  */
 package com.plantuml.glossa;
 
-public class StringPeeker {
-
-	private final String content;
-
-	private int position;
-
-	public StringPeeker(String content) {
-		this.content = content;
-	}
-
-	public int indexOf(char ch) {
-		return content.indexOf(ch, position) - position;
-	}
+/**
+ * Style bits given to {@link GlossaHandler#text}, and their names as
+ * {@link GlossaTag} metadata.
+ */
+public final class GlossaStyle {
 
-	public String substring(int beginIndex, int endIndex) {
-		return content.substring(position + beginIndex, position + endIndex);
-	}
+	public static final int BOLD = 1;
+	public static final int ITALIC = 2;
+	public static final int UNDERLINE = 4;
+	public static final int WAVE = 8;
+	public static final int STRIKE = 16;
+	public static final int CODE = 32;
 
-	public int length() {
-		return content.length() - position;
-	}
+	private static final String[] NAMES = { "bold", "italic", "underline", "wave", "strike", "code" };
 
-	public boolean endsWith(String end) {
-		return content.endsWith(end);
-	}
+	private GlossaStyle() {
 
-	public char charAt(int pos) {
-		return this.content.charAt(position + pos);
 	}
 
-	public String peek(int ahead) {
-		if (position + ahead > content.length())
-			return "";
-		return content.substring(position + ahead);
+	/**
+	 * Returns the metadata name of a single style bit.
+	 */
+	public static String name(int style) {
+		return NAMES[Integer.numberOfTrailingZeros(style)];
 	}
 
-	public void jump(int step) {
-		position += step;
+	/**
+	 * Returns the style bit named {@code name}, or 0 if it is not a style.
+	 */
+	public static int of(String name) {
+		for (int i = 0; i < NAMES.length; i++)
+			if (NAMES[i].equals(name))
+				return 1 << i;
+		return 0;
 	}
 
-	public int search(String searched, int ahead) {
-		for (int i = position + ahead; i < content.length() - searched.length() + 1; i++)
-			if (content.substring(i).startsWith(searched))
-				return i - position;
-
-		return -1;
+	static int count() {
+		return NAMES.length;
 	}
 
 }
@@ -34,37 +34,243 @@
  */
 package com.plantuml.glossa;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
+/**
+ * A tag as described in GML.md. To keep pages of millions of tags small, the
+ * name is interned, the style modifiers without value (see {@link GlossaStyle})
+ * are kept as bits, and the other metadata as key/value pairs sorted by key in
+ * a single array.
+ *
+ * The "content" metadata is a span of the parsed text rather than a copy of it:
+ * renderers can read it from {@link #getContentSource()} and
+ * {@link #getContent()} only builds a String when asked.
+ */
 public class GlossaTag {
 
+	// Names of the tags the parsers emit
+	static final String TEXT = "text";
+	static final String BR = "br";
+
+	private static final String[] NO_METADATA = new String[0];
+	private static final String CONTENT = "content";
+	// Source of a content added without value: a String of its own, so that it
+	// is not mistaken for an empty content
+	private static final String NO_CONTENT = new String();
+
+	// Style bits in the alphabetical order of their names, so that toString()
+	// can merge them with the sorted keys
+	private static final int[] STYLES_BY_NAME = sortedStyles();
+
 	private final String name;
-	private final Map<String, String> metadata = new TreeMap<>();
+	private int styles;
+	// key0, value0, key1, value1...
+	private String[] metadata = NO_METADATA;
+	// null when there is no content
+	private CharSequence contentSource;
+	private int contentStart;
+	private int contentEnd;
 
 	public GlossaTag(String name) {
-		this.name = name;
+		this.name = canonicalName(name);
+	}
+
+	// The names the parsers emit are resolved by a switch, which only hashes
+	// and compares the name: intern() looks it up in the JVM string table
+	private static String canonicalName(String name) {
+		switch (name) {
+		case TEXT:
+			return TEXT;
+		case BR:
+			return BR;
+		default:
+			return name.intern();
+		}
+	}
+
+	private static int[] sortedStyles() {
+		final String[] names = new String[GlossaStyle.count()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = GlossaStyle.name(1 << i);
+		Arrays.sort(names);
+		final int[] result = new int[names.length];
+		for (int i = 0; i < names.length; i++)
+			result[i] = GlossaStyle.of(names[i]);
+		return result;
 	}
 
 	public GlossaTag addMetadata(String key, String value) {
-		metadata.put(key, value);
+		if (CONTENT.equals(key))
+			return setContent(value == null ? NO_CONTENT : value);
+		final int style = GlossaStyle.of(key);
+		if (style != 0 && (value == null || value.isEmpty())) {
+			styles |= style;
+			remove(key);
+			return this;
+		}
+		styles &= ~style;
+		put(key, value);
 		return this;
 	}
 
 	public GlossaTag addMetadata(String key) {
-		metadata.put(key, null);
+		return addMetadata(key, null);
+	}
+
+	/**
+	 * Adds the style modifiers of the {@link GlossaStyle} bits {@code styles}.
+	 */
+	public GlossaTag addStyles(int styles) {
+		styles &= (1 << GlossaStyle.count()) - 1;
+		for (int i = 0; i < GlossaStyle.count(); i++)
+			if ((styles & (1 << i)) != 0)
+				remove(GlossaStyle.name(1 << i));
+		this.styles |= styles;
+		return this;
+	}
+
+	public GlossaTag setContent(CharSequence source) {
+		return setContent(source, 0, source.length());
+	}
+
+	/**
+	 * Sets the content to the characters of {@code source} from {@code start}
+	 * to {@code end}, without copying them. The source must not change
+	 * afterwards.
+	 */
+	public GlossaTag setContent(CharSequence source, int start, int end) {
+		if (start < 0 || end > source.length() || start > end)
+			throw new IndexOutOfBoundsException("start=" + start + " end=" + end + " length=" + source.length());
+		this.contentSource = source;
+		this.contentStart = start;
+		this.contentEnd = end;
 		return this;
 	}
 
+	/**
+	 * Returns the content as a new String, or null if there is none or it was
+	 * added without value.
+	 */
+	public String getContent() {
+		if (contentSource == null || contentSource == NO_CONTENT)
+			return null;
+		return contentSource.subSequence(contentStart, contentEnd).toString();
+	}
+
+	/**
+	 * Returns the text the content is a span of, or null if there is none.
+	 */
+	public CharSequence getContentSource() {
+		return contentSource;
+	}
+
+	public int getContentStart() {
+		return contentStart;
+	}
+
+	public int getContentEnd() {
+		return contentEnd;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the {@link GlossaStyle} bits of the modifiers set without value.
+	 */
+	public int getStyles() {
+		return styles;
+	}
+
+	/**
+	 * Returns the value of {@code key}, or null if it is absent or has no value.
+	 */
+	public String getMetadata(String key) {
+		if (CONTENT.equals(key))
+			return getContent();
+		final int index = indexOf(key);
+		return index < 0 ? null : metadata[index + 1];
+	}
+
+	public boolean hasMetadata(String key) {
+		if (CONTENT.equals(key))
+			return contentSource != null;
+		return (styles & GlossaStyle.of(key)) != 0 || indexOf(key) >= 0;
+	}
+
+	// Returns the index of the key in metadata, or -(insertion index) - 1
+	private int indexOf(String key) {
+		int low = 0;
+		int high = metadata.length / 2 - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int cmp = metadata[2 * mid].compareTo(key);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return 2 * mid;
+		}
+		return -2 * low - 1;
+	}
+
+	private void put(String key, String value) {
+		int index = indexOf(key);
+		if (index >= 0) {
+			metadata[index + 1] = value;
+			return;
+		}
+		index = -index - 1;
+		final String[] tmp = new String[metadata.length + 2];
+		System.arraycopy(metadata, 0, tmp, 0, index);
+		System.arraycopy(metadata, index, tmp, index + 2, metadata.length - index);
+		tmp[index] = key;
+		tmp[index + 1] = value;
+		metadata = tmp;
+	}
+
+	private void remove(String key) {
+		final int index = indexOf(key);
+		if (index < 0)
+			return;
+		final String[] tmp = metadata.length == 2 ? NO_METADATA : new String[metadata.length - 2];
+		System.arraycopy(metadata, 0, tmp, 0, index);
+		System.arraycopy(metadata, index + 2, tmp, index, metadata.length - index - 2);
+		metadata = tmp;
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder();
 		sb.append("《").append(name);
-		for (Map.Entry<String, String> entry : metadata.entrySet()) {
-			sb.append("〡").append(entry.getKey());
-			String value = entry.getValue();
-			if (value != null && !value.isEmpty())
-				sb.append("〓").append(value);
+		boolean content = contentSource != null;
+		int s = 0;
+		int m = 0;
+		while (true) {
+			while (s < STYLES_BY_NAME.length && (styles & STYLES_BY_NAME[s]) == 0)
+				s++;
+			final String style = s < STYLES_BY_NAME.length ? GlossaStyle.name(STYLES_BY_NAME[s]) : null;
+			final String key = m < metadata.length ? metadata[m] : null;
+			if (content && (style == null || CONTENT.compareTo(style) < 0)
+					&& (key == null || CONTENT.compareTo(key) < 0)) {
+				sb.append("〡").append(CONTENT);
+				if (contentEnd > contentStart)
+					sb.append("〓").append(contentSource, contentStart, contentEnd);
+				content = false;
+			} else if (key != null && (style == null || key.compareTo(style) < 0)) {
+				sb.append("〡").append(key);
+				final String value = metadata[m + 1];
+				if (value != null && !value.isEmpty())
+					sb.append("〓").append(value);
+				m += 2;
+			} else if (style != null) {
+				sb.append("〡").append(style);
+				s++;
+			} else {
+				break;
+			}
 		}
 		sb.append("》");
 		return sb.toString();
@@ -0,0 +1,233 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Stores the events of a {@link GlossaHandler} in parallel arrays, one entry per
+ * tag, rather than as {@link GlossaTag} objects. After {@link #reset()} the same
+ * arrays are filled again, so a buffer reused across parses stops allocating
+ * once it has grown to the size of the largest document.
+ *
+ * Content is kept as spans: of the source itself when it is a String, else of
+ * a copy of its chars held by the buffer. Spans, and the tags returned by
+ * {@link #asList()}, are only valid until the next reset.
+ */
+public class GlossaTagBuffer implements GlossaHandler {
+
+	public static final int TEXT = 0;
+	public static final int BR = 1;
+	public static final int OPEN = 2;
+	public static final int CLOSE = 3;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private int size;
+	private int[] kinds = new int[INITIAL_CAPACITY];
+	private long[] styles = new long[INITIAL_CAPACITY];
+	private int[] sources = new int[INITIAL_CAPACITY];
+	private int[] spans = new int[2 * INITIAL_CAPACITY];
+	// Element names of OPEN and CLOSE tags, null for the others
+	private String[] names = new String[INITIAL_CAPACITY];
+
+	// Distinct sources of the text tags, consecutive duplicates shared
+	private int sourceCount;
+	private CharSequence[] sourceTable = new CharSequence[16];
+	private final StringBuilder copies = new StringBuilder();
+
+	/**
+	 * Empties the buffer, keeping its arrays for the next parse.
+	 */
+	public void reset() {
+		Arrays.fill(names, 0, size, null);
+		Arrays.fill(sourceTable, 0, sourceCount, null);
+		size = 0;
+		sourceCount = 0;
+		copies.setLength(0);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void text(CharSequence source, int start, int end, int styles) {
+		if (source instanceof String == false) {
+			final int offset = copies.length();
+			copies.append(source, start, end);
+			source = copies;
+			end = offset + end - start;
+			start = offset;
+		}
+		final int index = add(TEXT, null);
+		this.styles[index] = styles;
+		this.sources[index] = sourceIndex(source);
+		this.spans[2 * index] = start;
+		this.spans[2 * index + 1] = end;
+	}
+
+	@Override
+	public void br() {
+		add(BR, null);
+	}
+
+	@Override
+	public void openTag(String name) {
+		add(OPEN, name);
+	}
+
+	@Override
+	public void closeTag(String name) {
+		add(CLOSE, name);
+	}
+
+	private int add(int kind, String name) {
+		if (size == kinds.length) {
+			final int capacity = 2 * size;
+			kinds = Arrays.copyOf(kinds, capacity);
+			styles = Arrays.copyOf(styles, capacity);
+			sources = Arrays.copyOf(sources, capacity);
+			spans = Arrays.copyOf(spans, 2 * capacity);
+			names = Arrays.copyOf(names, capacity);
+		}
+		kinds[size] = kind;
+		styles[size] = 0;
+		sources[size] = -1;
+		names[size] = name;
+		return size++;
+	}
+
+	private int sourceIndex(CharSequence source) {
+		if (sourceCount > 0 && sourceTable[sourceCount - 1] == source)
+			return sourceCount - 1;
+		if (sourceCount == sourceTable.length)
+			sourceTable = Arrays.copyOf(sourceTable, 2 * sourceCount);
+		sourceTable[sourceCount] = source;
+		return sourceCount++;
+	}
+
+	/**
+	 * Returns {@link #TEXT}, {@link #BR}, {@link #OPEN} or {@link #CLOSE}.
+	 */
+	public int getKind(int index) {
+		checkIndex(index);
+		return kinds[index];
+	}
+
+	/**
+	 * Returns the {@link GlossaStyle} bits of a text tag.
+	 */
+	public long getStyles(int index) {
+		checkIndex(index);
+		return styles[index];
+	}
+
+	/**
+	 * Returns the text the content of a text tag is a span of, or null for
+	 * other tags.
+	 */
+	public CharSequence getContentSource(int index) {
+		checkIndex(index);
+		return sources[index] < 0 ? null : sourceTable[sources[index]];
+	}
+
+	public int getContentStart(int index) {
+		checkIndex(index);
+		return spans[2 * index];
+	}
+
+	public int getContentEnd(int index) {
+		checkIndex(index);
+		return spans[2 * index + 1];
+	}
+
+	/**
+	 * Returns the element name of an {@link #OPEN} or {@link #CLOSE} tag, or
+	 * null for other tags.
+	 */
+	public String getElementName(int index) {
+		checkIndex(index);
+		return names[index];
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index=" + index + " size=" + size);
+	}
+
+	/**
+	 * Builds the {@link GlossaTag} of one entry, the same as
+	 * {@link GlossaTagCollector} would have made.
+	 */
+	public GlossaTag getTag(int index) {
+		switch (getKind(index)) {
+		case TEXT:
+			return new GlossaTag(GlossaTag.TEXT).addStyles((int) styles[index]).setContent(getContentSource(index),
+					spans[2 * index], spans[2 * index + 1]);
+		case BR:
+			return new GlossaTag(GlossaTag.BR);
+		case OPEN:
+			return new GlossaTag(names[index]);
+		default:
+			return new GlossaTag("/" + names[index]);
+		}
+	}
+
+	/**
+	 * Returns a view of the buffer as tags, built on each access.
+	 */
+	public List<GlossaTag> asList() {
+		return new TagList();
+	}
+
+	private class TagList extends AbstractList<GlossaTag> implements RandomAccess {
+
+		@Override
+		public GlossaTag get(int index) {
+			return getTag(index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+	}
+
+}
@@ -0,0 +1,88 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the events of a {@link GlossaHandler} into {@link GlossaTag}s: text
+ * becomes a "text" tag holding its styles and, as content, a span of the source
+ * when it is a String; an opened element becomes a tag with its name and a closed
+ * one a tag named "/" followed by its name.
+ */
+public class GlossaTagCollector implements GlossaHandler {
+
+	private final List<GlossaTag> tags;
+
+	public GlossaTagCollector(List<GlossaTag> tags) {
+		this.tags = tags;
+	}
+
+	public GlossaTagCollector() {
+		this(new ArrayList<>());
+	}
+
+	public List<GlossaTag> getTags() {
+		return tags;
+	}
+
+	@Override
+	public void text(CharSequence source, int start, int end, int styles) {
+		final GlossaTag tag = new GlossaTag(GlossaTag.TEXT).addStyles(styles);
+		// A String never changes, so its chars can be kept without copy
+		if (source instanceof String)
+			tag.setContent(source, start, end);
+		else
+			tag.setContent(source.subSequence(start, end).toString());
+		tags.add(tag);
+	}
+
+	@Override
+	public void br() {
+		tags.add(new GlossaTag(GlossaTag.BR));
+	}
+
+	@Override
+	public void openTag(String name) {
+		tags.add(new GlossaTag(name));
+	}
+
+	@Override
+	public void closeTag(String name) {
+		tags.add(new GlossaTag("/" + name));
+	}
+
+}
@@ -0,0 +1,75 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Parses one more unit of the document each time the tags of the previous one
+// have all been returned
+class GlossaTagIterator implements Iterator<GlossaTag> {
+
+	private final Parser parser;
+	private final Peeker<String> wiki;
+	private final List<GlossaTag> pending = new ArrayList<>();
+	private final GlossaTagCollector collector = new GlossaTagCollector(pending);
+	private int index;
+
+	GlossaTagIterator(Parser parser, Peeker<String> wiki) {
+		this.parser = parser;
+		this.wiki = wiki;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (index == pending.size()) {
+			pending.clear();
+			index = 0;
+			if (parser.parseNext(wiki, collector) == false)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public GlossaTag next() {
+		if (hasNext() == false)
+			throw new NoSuchElementException();
+		return pending.get(index++);
+	}
+
+}
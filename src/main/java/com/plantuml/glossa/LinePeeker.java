@@ -0,0 +1,102 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa;
+
+import java.io.Closeable;
+import java.util.Arrays;
+
+/**
+ * A {@link Peeker} reading lines one by one from a source. Only the lines
+ * between the current one and the furthest one peeked are kept, in a ring
+ * buffer: lines are released as soon as they are passed with {@link #jump()}.
+ */
+public abstract class LinePeeker implements Peeker<String>, Closeable {
+	// ::remove file when __HAXE__
+
+	private String[] ring = new String[4];
+	// Index of the current line in ring, and number of lines read ahead
+	private int head;
+	private int count;
+	private boolean eof;
+
+	/**
+	 * Returns the next line of the source, without its line terminator, or null
+	 * at the end. I/O errors are thrown as UncheckedIOException.
+	 */
+	protected abstract String readLine();
+
+	@Override
+	public String peek(int ahead) {
+		while (count <= ahead) {
+			if (eof)
+				return null;
+			final String line = readLine();
+			if (line == null) {
+				eof = true;
+				return null;
+			}
+			if (count == ring.length)
+				grow();
+			ring[(head + count) % ring.length] = line;
+			count++;
+		}
+		return ring[(head + ahead) % ring.length];
+	}
+
+	@Override
+	public void jump() {
+		if (count == 0 && peek(0) == null)
+			return;
+		ring[head] = null;
+		head = (head + 1) % ring.length;
+		count--;
+	}
+
+	private void grow() {
+		final String[] bigger = Arrays.copyOf(ring, 2 * ring.length);
+		// Unwraps the lines stored before head
+		System.arraycopy(ring, 0, bigger, ring.length, head);
+		Arrays.fill(bigger, 0, head, null);
+		ring = bigger;
+	}
+
+	@Override
+	public String toString() {
+		if (peek(0) == null)
+			return super.toString();
+		return peek(0);
+	}
+
+}
@@ -0,0 +1,131 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lines of a UTF-8 file, decoded from a memory-mapped window moving along the
+ * file. Files of any size can be read: only the window is mapped, and only the
+ * lines being peeked are decoded.
+ */
+public class MappedFilePeeker extends LinePeeker {
+	// ::remove file when __HAXE__
+
+	static final int DEFAULT_WINDOW = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final long size;
+	private final int windowSize;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	// Offset in the file of the next line
+	private long position;
+
+	public MappedFilePeeker(Path path) throws IOException {
+		this(path, DEFAULT_WINDOW);
+	}
+
+	MappedFilePeeker(Path path, int windowSize) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.size = channel.size();
+		this.windowSize = windowSize;
+		map(0, windowSize);
+		// Byte order mark
+		if (size >= 3 && window.get(0) == (byte) 0xEF && window.get(1) == (byte) 0xBB && window.get(2) == (byte) 0xBF)
+			position = 3;
+	}
+
+	private void map(long start, long length) throws IOException {
+		windowStart = start;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length, size - start));
+	}
+
+	@Override
+	protected String readLine() {
+		if (position >= size)
+			return null;
+		try {
+			int start = (int) (position - windowStart);
+			int end = findEnd(start);
+			// The line and its terminator, which may be "\r\n", must be in the window
+			while (end + 1 >= window.limit() && windowStart + window.limit() < size) {
+				if (windowStart == position && window.limit() == Integer.MAX_VALUE)
+					throw new IllegalStateException("Line too long at " + position);
+				final long length = windowStart == position ? Math.min(2L * window.limit(), Integer.MAX_VALUE)
+						: windowSize;
+				map(position, length);
+				start = 0;
+				end = findEnd(start);
+			}
+
+			final ByteBuffer bytes = window.duplicate();
+			bytes.position(start).limit(end);
+			final String result = StandardCharsets.UTF_8.decode(bytes).toString();
+
+			position = windowStart + end;
+			if (end < window.limit())
+				position += window.get(end) == '\r' && end + 1 < window.limit() && window.get(end + 1) == '\n' ? 2 : 1;
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Position of the first line terminator from start, or the window limit
+	private int findEnd(int start) {
+		final int limit = window.limit();
+		for (int i = start; i < limit; i++) {
+			final byte b = window.get(i);
+			if (b == '\n' || b == '\r')
+				return i;
+		}
+		return limit;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
@@ -0,0 +1,131 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Parses a document on several threads, for parsers where the tags of a line
+ * only depend on that line, such as ParserMarkdown. The lines are split into
+ * chunks, each chunk is parsed by its own parser, and the results are joined in
+ * order with a "br" between chunks: the output is the same as a sequential
+ * parse.
+ */
+public final class ParallelParser {
+
+	// Below this, a chunk costs more to schedule than to parse
+	static final int MIN_CHUNK_LINES = 512;
+	// Several chunks per thread, so that a slow chunk does not keep the others
+	// waiting
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final Supplier<? extends Parser> parsers;
+	private final Executor executor;
+	private final int parallelism;
+
+	/**
+	 * {@code parsers} must return a new parser at each call, since parsers are not
+	 * thread-safe.
+	 */
+	public ParallelParser(Supplier<? extends Parser> parsers, Executor executor) {
+		this.parsers = parsers;
+		this.executor = executor;
+		this.parallelism = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism()
+				: Runtime.getRuntime().availableProcessors();
+	}
+
+	public ParallelParser(Supplier<? extends Parser> parsers) {
+		this(parsers, ForkJoinPool.commonPool());
+	}
+
+	public List<GlossaTag> parse(List<String> lines) {
+		final int chunkCount = Math.max(1, Math.min(lines.size() / MIN_CHUNK_LINES, CHUNKS_PER_THREAD * parallelism));
+		if (chunkCount == 1)
+			return parsers.get().parse(PeekerUtils.peeker(lines));
+
+		final List<CompletableFuture<List<GlossaTag>>> chunks = new ArrayList<>(chunkCount);
+		int start = 0;
+		for (int i = 1; i <= chunkCount; i++) {
+			final int end = i == chunkCount ? lines.size()
+					: boundary(lines, start, (int) ((long) lines.size() * i / chunkCount));
+			final int from = start;
+			chunks.add(CompletableFuture.supplyAsync(() -> parse(lines, from, end), executor));
+			start = end;
+		}
+
+		final List<GlossaTag> result = new ArrayList<>();
+		boolean first = true;
+		try {
+			for (CompletableFuture<List<GlossaTag>> chunk : chunks) {
+				final List<GlossaTag> tags = chunk.join();
+				if (tags == null)
+					continue;
+				if (first == false)
+					result.add(new GlossaTag(GlossaTag.BR));
+				result.addAll(tags);
+				first = false;
+			}
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+		return result;
+	}
+
+	// Prefers to cut before a blank line, which ends any Markdown block, looking
+	// a few lines after the target
+	private static int boundary(List<String> lines, int start, int target) {
+		final int limit = Math.min(lines.size(), target + MIN_CHUNK_LINES / 8);
+		for (int i = Math.max(start + 1, target); i < limit; i++)
+			if (lines.get(i).trim().isEmpty())
+				return i;
+		return Math.max(start, target);
+	}
+
+	// null for an empty range, so that no "br" is added for it
+	private List<GlossaTag> parse(List<String> lines, int from, int to) {
+		if (from == to)
+			return null;
+		return parsers.get().parse(PeekerUtils.peeker(lines.subList(from, to)));
+	}
+
+}
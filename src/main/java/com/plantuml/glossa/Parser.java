@@ -34,11 +34,36 @@
  */
 package com.plantuml.glossa;
 
+import java.util.Iterator;
 import java.util.List;
 
 public interface Parser {
 
 	// Voir net.sourceforge.plantuml.klimt.font.FontStyle
-	public List<GlossaTag> parse(Peeker<String> wiki);
+
+	/**
+	 * Parses the next part of {@code wiki} (a line for line-based syntaxes),
+	 * reports it to {@code handler} and moves the peeker past it. Returns false
+	 * when there is nothing left to parse.
+	 */
+	public boolean parseNext(Peeker<String> wiki, GlossaHandler handler);
+
+	public default void parse(Peeker<String> wiki, GlossaHandler handler) {
+		while (parseNext(wiki, handler))
+			;
+	}
+
+	public default List<GlossaTag> parse(Peeker<String> wiki) {
+		final GlossaTagCollector collector = new GlossaTagCollector();
+		parse(wiki, collector);
+		return collector.getTags();
+	}
+
+	/**
+	 * Returns the tags of {@code wiki}, parsed as they are requested.
+	 */
+	public default Iterator<GlossaTag> iterator(Peeker<String> wiki) {
+		return new GlossaTagIterator(this, wiki);
+	}
 
 }
@@ -35,6 +35,9 @@
  */
 package com.plantuml.glossa;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
 import java.util.List;
 
 public abstract class PeekerUtils {
@@ -44,6 +47,22 @@ public abstract class PeekerUtils {
 
 	}
 
+	/**
+	 * Returns the lines of {@code reader}, read as they are peeked. The peeker
+	 * must be closed once done.
+	 */
+	public static LinePeeker peeker(Reader reader) {
+		return new ReaderPeeker(reader);
+	}
+
+	/**
+	 * Returns the lines of a UTF-8 file, read through a memory mapping. The
+	 * peeker must be closed once done.
+	 */
+	public static LinePeeker peeker(Path path) throws IOException {
+		return new MappedFilePeeker(path);
+	}
+
 	public static <O> Peeker<O> peeker(final List<O> list) {
 		return new Peeker<O>() {
 
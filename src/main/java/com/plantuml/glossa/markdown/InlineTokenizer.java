@@ -0,0 +1,343 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.markdown;
+
+import java.util.Arrays;
+
+import com.plantuml.glossa.GlossaHandler;
+import com.plantuml.glossa.GlossaStyle;
+import com.plantuml.glossa.ptrie.FirstChars;
+import com.plantuml.glossa.ptrie.PatternTrieBuilder;
+
+/**
+ * Resolves the emphasis and code spans of one line the way CommonMark does, in
+ * linear time: backtick runs are paired with the next run of the same length,
+ * then runs of '*' are matched with a delimiter stack and the
+ * "openers bottom" rule, so that no part of the line is searched twice.
+ *
+ * A tokenizer keeps its buffers from one line to the next, so it must not be
+ * shared between threads.
+ */
+final class InlineTokenizer {
+
+	// Delimiter chars used by an emphasis or a code span, not part of the text
+	private static final int HIDDEN = 1 << 16;
+
+	private static final int NONE = -1;
+
+	private static final FirstChars DELIMITERS = new PatternTrieBuilder().add("*").add("`").build().firstChars();
+
+	// Per char of the line: CODE and HIDDEN flags, then bold and italic depths
+	// as difference arrays (+1 where an emphasis starts, -1 where it ends)
+	private int[] flags = new int[0];
+	private int[] bold = new int[1];
+	private int[] italic = new int[1];
+
+	// Backtick runs, in order
+	private int tickCount;
+	private int[] tickStart = new int[8];
+	private int[] tickLength = new int[8];
+	private int[] tickNext = new int[8];
+	// Per run length, the first run of that length after the current one
+	private int[] lastTick = new int[0];
+
+	// Runs of '*' outside of code spans, in order, as a doubly linked list
+	private int starCount;
+	private int[] starStart = new int[8];
+	private int[] starLength = new int[8];
+	private int[] remaining = new int[8];
+	private boolean[] canOpen = new boolean[8];
+	private boolean[] canClose = new boolean[8];
+	private int[] previous = new int[8];
+	private int[] next = new int[8];
+	private final int[] openersBottom = new int[6];
+
+	/**
+	 * Reports the chars of {@code line} to {@code handler}, as runs sharing the
+	 * same styles.
+	 */
+	void tokenize(String line, GlossaHandler handler) {
+		final int length = line.length();
+		if (flags.length < length) {
+			flags = new int[length];
+			bold = new int[length + 1];
+			italic = new int[length + 1];
+		}
+		Arrays.fill(flags, 0, length, 0);
+		Arrays.fill(bold, 0, length + 1, 0);
+		Arrays.fill(italic, 0, length + 1, 0);
+
+		findTicks(line);
+		matchCodeSpans(line);
+		findStars(line);
+		processEmphasis();
+		emit(line, handler);
+	}
+
+	private void findTicks(String line) {
+		tickCount = 0;
+		final int length = line.length();
+		for (int i = DELIMITERS.next(line, 0, length); i < length; i = DELIMITERS.next(line, i, length)) {
+			final int start = i;
+			final char ch = line.charAt(i);
+			while (i < length && line.charAt(i) == ch)
+				i++;
+			if (ch != '`')
+				continue;
+			if (tickCount == tickStart.length) {
+				tickStart = Arrays.copyOf(tickStart, 2 * tickCount);
+				tickLength = Arrays.copyOf(tickLength, 2 * tickCount);
+				tickNext = Arrays.copyOf(tickNext, 2 * tickCount);
+			}
+			tickStart[tickCount] = start;
+			tickLength[tickCount] = i - start;
+			tickCount++;
+		}
+	}
+
+	// A backtick run opens a code span closed by the next run of the same length,
+	// or else is plain text
+	private void matchCodeSpans(String line) {
+		// A run is never longer than the line
+		if (lastTick.length <= line.length()) {
+			lastTick = new int[line.length() + 1];
+			Arrays.fill(lastTick, NONE);
+		}
+		for (int r = tickCount - 1; r >= 0; r--) {
+			tickNext[r] = lastTick[tickLength[r]];
+			lastTick[tickLength[r]] = r;
+		}
+		// Only the lengths seen on this line need to be cleared
+		for (int r = 0; r < tickCount; r++)
+			lastTick[tickLength[r]] = NONE;
+
+		int r = 0;
+		while (r < tickCount) {
+			final int closer = tickNext[r];
+			if (closer == NONE) {
+				r++;
+				continue;
+			}
+			int start = tickStart[r] + tickLength[r];
+			int end = tickStart[closer];
+			mark(tickStart[r], start, HIDDEN);
+			mark(end, end + tickLength[closer], HIDDEN);
+			// One space is stripped on both sides, unless there are only spaces
+			if (end - start >= 2 && line.charAt(start) == ' ' && line.charAt(end - 1) == ' '
+					&& onlySpaces(line, start, end) == false) {
+				mark(start, start + 1, HIDDEN);
+				mark(end - 1, end, HIDDEN);
+				start++;
+				end--;
+			}
+			mark(start, end, GlossaStyle.CODE);
+			r = closer + 1;
+		}
+	}
+
+	private static boolean onlySpaces(String line, int start, int end) {
+		for (int i = start; i < end; i++)
+			if (line.charAt(i) != ' ')
+				return false;
+		return true;
+	}
+
+	private void mark(int start, int end, int flag) {
+		for (int i = start; i < end; i++)
+			flags[i] |= flag;
+	}
+
+	private void findStars(String line) {
+		starCount = 0;
+		final int length = line.length();
+		for (int i = DELIMITERS.next(line, 0, length); i < length; i = DELIMITERS.next(line, i, length)) {
+			final int start = i;
+			final char ch = line.charAt(i);
+			while (i < length && line.charAt(i) == ch)
+				i++;
+			if (ch != '*' || (flags[start] & GlossaStyle.CODE) != 0)
+				continue;
+
+			final char before = start == 0 ? ' ' : line.charAt(start - 1);
+			final char after = i == length ? ' ' : line.charAt(i);
+			final boolean leftFlanking = isWhitespace(after) == false
+					&& (isPunctuation(after) == false || isWhitespace(before) || isPunctuation(before));
+			final boolean rightFlanking = isWhitespace(before) == false
+					&& (isPunctuation(before) == false || isWhitespace(after) || isPunctuation(after));
+			if (leftFlanking == false && rightFlanking == false)
+				continue;
+
+			if (starCount == starStart.length)
+				growStars();
+			starStart[starCount] = start;
+			starLength[starCount] = i - start;
+			remaining[starCount] = i - start;
+			canOpen[starCount] = leftFlanking;
+			canClose[starCount] = rightFlanking;
+			previous[starCount] = starCount - 1;
+			next[starCount] = NONE;
+			if (starCount > 0)
+				next[starCount - 1] = starCount;
+			starCount++;
+		}
+	}
+
+	private void growStars() {
+		final int size = 2 * starCount;
+		starStart = Arrays.copyOf(starStart, size);
+		starLength = Arrays.copyOf(starLength, size);
+		remaining = Arrays.copyOf(remaining, size);
+		canOpen = Arrays.copyOf(canOpen, size);
+		canClose = Arrays.copyOf(canClose, size);
+		previous = Arrays.copyOf(previous, size);
+		next = Arrays.copyOf(next, size);
+	}
+
+	// See "process emphasis" in the CommonMark specification. Runs are numbered
+	// in order, so the openers bottom is kept as a run number
+	private void processEmphasis() {
+		Arrays.fill(openersBottom, NONE);
+		int closer = starCount == 0 ? NONE : 0;
+		while (closer != NONE) {
+			if (canClose[closer] == false) {
+				closer = next[closer];
+				continue;
+			}
+			final int slot = (canOpen[closer] ? 3 : 0) + starLength[closer] % 3;
+			int opener = previous[closer];
+			while (opener != NONE && opener > openersBottom[slot] && canMatch(opener, closer) == false)
+				opener = previous[opener];
+
+			if (opener != NONE && opener > openersBottom[slot]) {
+				final int used = remaining[opener] >= 2 && remaining[closer] >= 2 ? 2 : 1;
+				final int start = starStart[opener] + remaining[opener];
+				final int end = starStart[closer];
+				mark(start - used, start, HIDDEN);
+				mark(end, end + used, HIDDEN);
+				final int[] depth = used == 2 ? bold : italic;
+				depth[start]++;
+				depth[end]--;
+
+				remaining[opener] -= used;
+				remaining[closer] -= used;
+				starStart[closer] += used;
+				// Runs between the opener and the closer can no longer match
+				next[opener] = closer;
+				previous[closer] = opener;
+				if (remaining[opener] == 0)
+					unlink(opener);
+				if (remaining[closer] == 0) {
+					final int following = next[closer];
+					unlink(closer);
+					closer = following;
+				}
+			} else {
+				openersBottom[slot] = previous[closer];
+				final int following = next[closer];
+				if (canOpen[closer] == false)
+					unlink(closer);
+				closer = following;
+			}
+		}
+	}
+
+	private boolean canMatch(int opener, int closer) {
+		if (canOpen[opener] == false)
+			return false;
+		// The "rule of 3" for runs that can both open and close
+		final int sum = starLength[opener] + starLength[closer];
+		return (canClose[opener] || canOpen[closer]) == false || sum % 3 != 0
+				|| (starLength[opener] % 3 == 0 && starLength[closer] % 3 == 0);
+	}
+
+	private void unlink(int run) {
+		if (previous[run] != NONE)
+			next[previous[run]] = next[run];
+		if (next[run] != NONE)
+			previous[next[run]] = previous[run];
+	}
+
+	private void emit(String line, GlossaHandler handler) {
+		int boldDepth = 0;
+		int italicDepth = 0;
+		int start = 0;
+		int current = NONE;
+		for (int i = 0; i < line.length(); i++) {
+			boldDepth += bold[i];
+			italicDepth += italic[i];
+			if ((flags[i] & HIDDEN) != 0) {
+				if (current != NONE)
+					handler.text(line, start, i, current);
+				current = NONE;
+				continue;
+			}
+			final int styles = (flags[i] & GlossaStyle.CODE) | (boldDepth > 0 ? GlossaStyle.BOLD : 0)
+					| (italicDepth > 0 ? GlossaStyle.ITALIC : 0);
+			if (styles != current) {
+				if (current != NONE)
+					handler.text(line, start, i, current);
+				start = i;
+				current = styles;
+			}
+		}
+		if (current != NONE)
+			handler.text(line, start, line.length(), current);
+	}
+
+	private static boolean isWhitespace(char ch) {
+		return Character.isWhitespace(ch) || Character.getType(ch) == Character.SPACE_SEPARATOR;
+	}
+
+	// Unicode punctuation and symbols, which include every ASCII punctuation char
+	private static boolean isPunctuation(char ch) {
+		switch (Character.getType(ch)) {
+		case Character.CONNECTOR_PUNCTUATION:
+		case Character.DASH_PUNCTUATION:
+		case Character.START_PUNCTUATION:
+		case Character.END_PUNCTUATION:
+		case Character.INITIAL_QUOTE_PUNCTUATION:
+		case Character.FINAL_QUOTE_PUNCTUATION:
+		case Character.OTHER_PUNCTUATION:
+		case Character.MATH_SYMBOL:
+		case Character.CURRENCY_SYMBOL:
+		case Character.MODIFIER_SYMBOL:
+		case Character.OTHER_SYMBOL:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+}
@@ -34,100 +34,30 @@
  */
 package com.plantuml.glossa.markdown;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import com.plantuml.glossa.GlossaTag;
+import com.plantuml.glossa.GlossaHandler;
 import com.plantuml.glossa.Parser;
 import com.plantuml.glossa.Peeker;
-import com.plantuml.glossa.StringPeeker;
-import com.plantuml.glossa.ptrie.PatternTrie;
 
 public class ParserMarkdown implements Parser {
 
 	// https://www.markdownguide.org/basic-syntax/
-	
-	private final PatternTrie style = new PatternTrie();
+	// Emphasis and code spans follow https://spec.commonmark.org/ (see
+	// InlineTokenizer), other inline elements are not supported yet
 
-	public ParserMarkdown() {
-		style.addPattern("***");
-		style.addPattern("**");
-		style.addPattern("*");
-		style.addPattern("`");
-	}
+	private final InlineTokenizer tokenizer = new InlineTokenizer();
 
 	@Override
-	public List<GlossaTag> parse(Peeker<String> wiki) {
-
-		final List<GlossaTag> result = new ArrayList<>();
-
-		for (; wiki.peek(0) != null; wiki.jump()) {
-			final StringPeeker line = new StringPeeker(wiki.peek(0));
-			final StringBuilder pending = new StringBuilder();
-
-			while (line.peek(0).length() > 0) {
-				final String styleStart = style.getLongestMatchStartingIn(line.peek(0), 0);
-
-				if (styleStart.equals("***")) {
-					final int styleEnd = line.search("***", 4);
-					if (styleEnd != -1) {
-						addPending(result, pending);
-						result.add(new GlossaTag("text").addMetadata("bold").addMetadata("italic")
-								.addMetadata("content", line.peek(0).substring(3, styleEnd)));
-						line.jump(styleEnd + 3);
-						continue;
-
-					}
-				} else if (styleStart.equals("**")) {
-					final int styleEnd = line.search("**", 3);
-					if (styleEnd != -1) {
-						addPending(result, pending);
-						result.add(new GlossaTag("text").addMetadata("bold").addMetadata("content",
-								line.peek(0).substring(2, styleEnd)));
-						line.jump(styleEnd + 2);
-						continue;
+	public boolean parseNext(Peeker<String> wiki, GlossaHandler handler) {
+		final String line = wiki.peek(0);
+		if (line == null)
+			return false;
 
-					}
-				} else if (styleStart.equals("*")) {
-					final int styleEnd = line.search("*", 2);
-					if (styleEnd != -1) {
-						addPending(result, pending);
-						result.add(new GlossaTag("text").addMetadata("italic").addMetadata("content",
-								line.peek(0).substring(1, styleEnd)));
-						line.jump(styleEnd + 1);
-						continue;
-
-					}
-				} else if (styleStart.equals("`")) {
-					final int styleEnd = line.search("`", 2);
-					if (styleEnd != -1) {
-						addPending(result, pending);
-						result.add(new GlossaTag("text").addMetadata("code").addMetadata("content",
-								line.peek(0).substring(1, styleEnd)));
-						line.jump(styleEnd + 1);
-						continue;
-
-					}
-				}
-
-				pending.append(line.charAt(0));
-				line.jump(1);
-
-			}
-			addPending(result, pending);
-
-			if (wiki.peek(1) != null)
-				result.add(new GlossaTag("br"));
-
-		}
-		return result;
-	}
+		tokenizer.tokenize(line, handler);
+		if (wiki.peek(1) != null)
+			handler.br();
 
-	private static void addPending(final List<GlossaTag> result, final StringBuilder pending) {
-		if (pending.length() > 0) {
-			result.add(new GlossaTag("text").addMetadata("content", pending.toString()));
-			pending.setLength(0);
-		}
+		wiki.jump();
+		return true;
 	}
 
 }
@@ -0,0 +1,159 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Process-wide cache of parsed brackex sources and of the nested tries built
+ * for groups and repetitions, keyed by their source text. The least recently
+ * used entries are dropped once {@link #getMaximumSize()} is reached.
+ */
+public final class BrackexCache {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+	private static final BrackexCache INSTANCE = new BrackexCache(DEFAULT_MAXIMUM_SIZE);
+
+	private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private int maximumSize;
+
+	// Both fields are filled lazily: a source can be used as a whole pattern, as
+	// the body of a group, or both
+	private static final class Entry {
+		BrackexNode node;
+		PatternTrie nested;
+	}
+
+	BrackexCache(int maximumSize) {
+		setMaximumSize(maximumSize);
+	}
+
+	public static BrackexCache getInstance() {
+		return INSTANCE;
+	}
+
+	BrackexNode parse(String source) {
+		synchronized (this) {
+			final Entry entry = entries.get(source);
+			if (entry != null && entry.node != null) {
+				hits.incrementAndGet();
+				return entry.node;
+			}
+		}
+		misses.incrementAndGet();
+		// Parsed outside of the lock: two threads may parse the same source, but
+		// they get equivalent trees
+		final BrackexNode result = BrackexParser.parse(source);
+		synchronized (this) {
+			entry(source).node = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the nested trie built for {@code node}, which must not contain any
+	 * named group. The returned trie is shared and must not be modified.
+	 */
+	PatternTrie nested(BrackexNode node, Function<BrackexNode, PatternTrie> builder) {
+		final String source = node.getSource();
+		synchronized (this) {
+			final Entry entry = entries.get(source);
+			if (entry != null && entry.nested != null) {
+				hits.incrementAndGet();
+				return entry.nested;
+			}
+		}
+		misses.incrementAndGet();
+		final PatternTrie result = builder.apply(node);
+		synchronized (this) {
+			entry(source).nested = result;
+		}
+		return result;
+	}
+
+	private Entry entry(String source) {
+		Entry result = entries.get(source);
+		if (result == null) {
+			result = new Entry();
+			entries.put(source, result);
+			evict();
+		}
+		return result;
+	}
+
+	private void evict() {
+		while (entries.size() > maximumSize)
+			entries.remove(entries.keySet().iterator().next());
+	}
+
+	public synchronized int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Changes the number of sources kept. Zero disables the cache.
+	 */
+	public synchronized void setMaximumSize(int maximumSize) {
+		if (maximumSize < 0)
+			throw new IllegalArgumentException("Negative size: " + maximumSize);
+		this.maximumSize = maximumSize;
+		evict();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		hits.set(0);
+		misses.set(0);
+	}
+
+}
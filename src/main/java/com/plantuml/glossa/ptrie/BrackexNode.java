@@ -0,0 +1,264 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Syntax tree of a brackex pattern, as produced by {@link BrackexParser}.
+ */
+abstract class BrackexNode {
+
+	private final String source;
+
+	BrackexNode(String source) {
+		this.source = source;
+	}
+
+	/**
+	 * The brackex text this node was parsed from.
+	 */
+	String getSource() {
+		return source;
+	}
+
+	/**
+	 * Whether this node can match the empty string.
+	 */
+	abstract boolean isNullable();
+
+	/**
+	 * Whether this node contains a named group. The nested tries of such nodes
+	 * depend on the group ids of their root, so they cannot be shared.
+	 */
+	abstract boolean hasNamedGroup();
+
+	/**
+	 * Estimates the number of {@link PatternNfa} states this node needs once its
+	 * repetitions are unrolled, saturating at Integer.MAX_VALUE.
+	 */
+	abstract int stateCount();
+
+	static int saturated(long value) {
+		return (int) Math.min(Integer.MAX_VALUE, value);
+	}
+
+	@Override
+	public String toString() {
+		return source;
+	}
+
+	static final class Literal extends BrackexNode {
+
+		final char ch;
+
+		Literal(String source, char ch) {
+			super(source);
+			this.ch = ch;
+		}
+
+		@Override
+		boolean isNullable() {
+			return false;
+		}
+
+		@Override
+		boolean hasNamedGroup() {
+			return false;
+		}
+
+		@Override
+		int stateCount() {
+			return 2;
+		}
+	}
+
+	static final class CharClass extends BrackexNode {
+
+		final CharSetPattern set;
+
+		CharClass(String source, CharSetPattern set) {
+			super(source);
+			this.set = set;
+		}
+
+		@Override
+		boolean isNullable() {
+			return false;
+		}
+
+		@Override
+		boolean hasNamedGroup() {
+			return false;
+		}
+
+		@Override
+		int stateCount() {
+			return 2;
+		}
+	}
+
+	static final class Sequence extends BrackexNode {
+
+		final List<BrackexNode> items;
+
+		Sequence(String source, List<BrackexNode> items) {
+			super(source);
+			this.items = Collections.unmodifiableList(items);
+		}
+
+		@Override
+		boolean isNullable() {
+			for (BrackexNode item : items)
+				if (item.isNullable() == false)
+					return false;
+			return true;
+		}
+
+		@Override
+		boolean hasNamedGroup() {
+			for (BrackexNode item : items)
+				if (item.hasNamedGroup())
+					return true;
+			return false;
+		}
+
+		@Override
+		int stateCount() {
+			long result = 0;
+			for (BrackexNode item : items)
+				result += item.stateCount();
+			return saturated(result);
+		}
+	}
+
+	static final class Alternative extends BrackexNode {
+
+		final List<BrackexNode> choices;
+
+		Alternative(String source, List<BrackexNode> choices) {
+			super(source);
+			this.choices = Collections.unmodifiableList(choices);
+		}
+
+		@Override
+		boolean isNullable() {
+			for (BrackexNode choice : choices)
+				if (choice.isNullable())
+					return true;
+			return false;
+		}
+
+		@Override
+		boolean hasNamedGroup() {
+			for (BrackexNode choice : choices)
+				if (choice.hasNamedGroup())
+					return true;
+			return false;
+		}
+
+		@Override
+		int stateCount() {
+			long result = 1;
+			for (BrackexNode choice : choices)
+				result += choice.stateCount();
+			return saturated(result);
+		}
+	}
+
+	static final class Repeat extends BrackexNode {
+
+		// max is UNBOUNDED for 〇*, 〇+ and 〸
+		static final int UNBOUNDED = -1;
+
+		final int min;
+		final int max;
+		final BrackexNode item;
+
+		Repeat(String source, int min, int max, BrackexNode item) {
+			super(source);
+			this.min = min;
+			this.max = max;
+			this.item = item;
+		}
+
+		@Override
+		boolean isNullable() {
+			return min == 0 || item.isNullable();
+		}
+
+		@Override
+		boolean hasNamedGroup() {
+			return item.hasNamedGroup();
+		}
+
+		// Every copy of the item is followed by a state choosing to go on or not
+		@Override
+		int stateCount() {
+			final long copies = max == UNBOUNDED ? Math.max(min, 1) : max;
+			return saturated(copies * (item.stateCount() + 1L) + 1);
+		}
+	}
+
+	static final class Group extends BrackexNode {
+
+		// null for unnamed groups
+		final String name;
+		final BrackexNode item;
+
+		Group(String source, String name, BrackexNode item) {
+			super(source);
+			this.name = name;
+			this.item = item;
+		}
+
+		@Override
+		boolean isNullable() {
+			return item.isNullable();
+		}
+
+		@Override
+		boolean hasNamedGroup() {
+			return name != null || item.hasNamedGroup();
+		}
+
+		@Override
+		int stateCount() {
+			return saturated(item.stateCount() + 3L);
+		}
+	}
+
+}
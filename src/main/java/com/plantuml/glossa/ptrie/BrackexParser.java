@@ -0,0 +1,274 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.plantuml.glossa.ptrie.BrackexNode.Alternative;
+import com.plantuml.glossa.ptrie.BrackexNode.CharClass;
+import com.plantuml.glossa.ptrie.BrackexNode.Group;
+import com.plantuml.glossa.ptrie.BrackexNode.Literal;
+import com.plantuml.glossa.ptrie.BrackexNode.Repeat;
+import com.plantuml.glossa.ptrie.BrackexNode.Sequence;
+
+/**
+ * Parses the brackex syntax described in brackex.md into a {@link BrackexNode}
+ * tree.
+ *
+ * Besides the documented syntax, {@code 〸x} is read as {@code 〇+x} and
+ * {@code 〔name〡…〕} as {@code 〘name〡…〙}, as in the first patterns written for
+ * {@link PatternTrie}.
+ */
+final class BrackexParser {
+
+	static final int MAX_REPEAT = 1000;
+	// Repetitions are unrolled into states of the NFA: this bounds the size of a
+	// pattern once they are, whatever their nesting
+	static final int MAX_STATES = 20_000;
+
+	private static final String[] CLASS_NAMES = { "_-.an", "_.an", "_-an", "_an", "an", "w", "d", "s", "'", "\"" };
+	private static final String SINGLE_QUOTES = "'\u2018\u2019\u201A\u201B\u2039\u203A\uFF07";
+	private static final String DOUBLE_QUOTES = "\"\u00AB\u00BB\u201C\u201D\u201E\u201F\u301D\u301E\u301F\uFF02";
+
+	private final String pattern;
+	private int pos;
+
+	private BrackexParser(String pattern) {
+		this.pattern = pattern;
+	}
+
+	static BrackexNode parse(String pattern) {
+		final BrackexParser parser = new BrackexParser(pattern);
+		final BrackexNode result = parser.sequence();
+		if (parser.pos < pattern.length())
+			throw parser.error("Unexpected '" + pattern.charAt(parser.pos) + "'");
+		if (result.stateCount() > MAX_STATES)
+			throw new IllegalArgumentException(
+					"Repetitions expand to more than " + MAX_STATES + " states in " + pattern);
+		return result;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at " + pos + " in " + pattern);
+	}
+
+	private static boolean isTerminator(char ch) {
+		return ch == '〡' || ch == '〙' || ch == '〕' || ch == '】';
+	}
+
+	private BrackexNode sequence() {
+		final int start = pos;
+		final List<BrackexNode> items = new ArrayList<>();
+		while (pos < pattern.length() && isTerminator(pattern.charAt(pos)) == false)
+			items.add(element());
+
+		if (items.size() == 1)
+			return items.get(0);
+		return new Sequence(pattern.substring(start, pos), items);
+	}
+
+	private BrackexNode element() {
+		final int start = pos;
+		final char ch = pattern.charAt(pos);
+		if (ch == '〸') {
+			pos++;
+			final BrackexNode item = atom();
+			return new Repeat(pattern.substring(start, pos), 1, Repeat.UNBOUNDED, item);
+		}
+		if (ch == '〇') {
+			pos++;
+			final int[] bounds = quantifier();
+			final BrackexNode item = atom();
+			return new Repeat(pattern.substring(start, pos), bounds[0], bounds[1], item);
+		}
+		return atom();
+	}
+
+	private int[] quantifier() {
+		if (pos >= pattern.length())
+			throw error("Missing quantifier after 〇");
+
+		final char ch = pattern.charAt(pos++);
+		if (ch == '?')
+			return new int[] { 0, 1 };
+		if (ch == '*')
+			return new int[] { 0, Repeat.UNBOUNDED };
+		if (ch == '+')
+			return new int[] { 1, Repeat.UNBOUNDED };
+		if (ch != '{')
+			throw error("Unknown quantifier '" + ch + "'");
+
+		final int min = number();
+		int max = min;
+		if (pos < pattern.length() && (pattern.charAt(pos) == '-' || pattern.charAt(pos) == ',')) {
+			pos++;
+			max = number();
+		}
+		if (pos >= pattern.length() || pattern.charAt(pos) != '}')
+			throw error("Missing '}'");
+		pos++;
+		if (min > max)
+			throw error("Invalid bounds " + min + " > " + max);
+		if (max > MAX_REPEAT)
+			throw error("Repetitions are limited to " + MAX_REPEAT);
+		return new int[] { min, max };
+	}
+
+	private int number() {
+		final int start = pos;
+		while (pos < pattern.length() && pattern.charAt(pos) >= '0' && pattern.charAt(pos) <= '9' && pos - start < 9)
+			pos++;
+		if (pos == start)
+			throw error("Number expected");
+		return Integer.parseInt(pattern.substring(start, pos));
+	}
+
+	private BrackexNode atom() {
+		if (pos >= pattern.length() || isTerminator(pattern.charAt(pos)))
+			throw error("Missing pattern");
+
+		final int start = pos;
+		final char ch = pattern.charAt(pos);
+		switch (ch) {
+		case '〇':
+		case '〸':
+			return element();
+		case '「':
+			final int end = pattern.indexOf('」', pos);
+			if (end == -1)
+				throw error("Missing 」");
+			pos = end + 1;
+			final String set = pattern.substring(start, pos);
+			return new CharClass(set, CharSetPattern.build(set));
+		case '〘':
+			return group('〙');
+		case '〔':
+			return group('〕');
+		case '【':
+			return alternative();
+		case '〴':
+			return predefinedClass();
+		default:
+			pos++;
+			return new Literal(pattern.substring(start, pos), ch);
+		}
+	}
+
+	private BrackexNode group(char close) {
+		final int start = pos++;
+		String name = null;
+		int end = pos;
+		while (end < pattern.length() && isNameChar(pattern.charAt(end)))
+			end++;
+		if (end > pos && end < pattern.length() && pattern.charAt(end) == '〡') {
+			name = pattern.substring(pos, end);
+			pos = end + 1;
+		}
+		final BrackexNode item = sequence();
+		expect(close);
+		return new Group(pattern.substring(start, pos), name, item);
+	}
+
+	private static boolean isNameChar(char ch) {
+		return Character.isLetterOrDigit(ch) || ch == '_' || ch == '-' || ch == '.';
+	}
+
+	private BrackexNode alternative() {
+		final int start = pos++;
+		final List<BrackexNode> choices = new ArrayList<>();
+		choices.add(sequence());
+		while (pos < pattern.length() && pattern.charAt(pos) == '〡') {
+			pos++;
+			choices.add(sequence());
+		}
+		expect('】');
+		return new Alternative(pattern.substring(start, pos), choices);
+	}
+
+	private void expect(char close) {
+		if (pos >= pattern.length() || pattern.charAt(pos) != close)
+			throw error("Missing " + close);
+		pos++;
+	}
+
+	private BrackexNode predefinedClass() {
+		final int start = pos++;
+		for (String name : CLASS_NAMES)
+			if (pattern.startsWith(name, pos)) {
+				pos += name.length();
+				final String source = pattern.substring(start, pos);
+				return new CharClass(source, predefinedClass(source, name));
+			}
+		throw error("Unknown class");
+	}
+
+	private static CharSetPattern predefinedClass(String source, String name) {
+		final CharSetPattern result = new CharSetPattern(source);
+		if (name.equals("d")) {
+			result.addRange('0', '9');
+		} else if (name.equals("w")) {
+			result.addRange('a', 'z');
+			result.addRange('A', 'Z');
+			result.addRange('0', '9');
+			result.addChar('_');
+		} else if (name.equals("s")) {
+			result.addChar(' ');
+			result.addRange('\t', '\r');
+		} else if (name.equals("'")) {
+			for (char ch : SINGLE_QUOTES.toCharArray())
+				result.addChar(ch);
+		} else if (name.equals("\"")) {
+			for (char ch : DOUBLE_QUOTES.toCharArray())
+				result.addChar(ch);
+		} else {
+			// The "an" family: Unicode letters and digits, plus the chars before "an"
+			result.addAll(Alphanumerics.SET);
+			for (char ch : name.substring(0, name.length() - 2).toCharArray())
+				result.addChar(ch);
+		}
+		return result;
+	}
+
+	// Scanning every code point takes a few milliseconds, so it is only done the
+	// first time a pattern uses 〴an
+	private static final class Alphanumerics {
+		static final CharSetPattern SET = new CharSetPattern();
+		static {
+			SET.addIf(Character::isLetterOrDigit);
+		}
+	}
+
+}
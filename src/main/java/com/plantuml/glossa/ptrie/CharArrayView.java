@@ -0,0 +1,99 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A CharSequence reading the chars of an array up to a given end, so that a
+ * char[] range is matched by the same code as any other CharSequence. Views are
+ * reused from one match to the next: {@link #release()} must be called once the
+ * match is done, and the view must not be kept.
+ */
+final class CharArrayView implements CharSequence {
+
+	private static final AtomicReference<CharArrayView> SPARE = new AtomicReference<>();
+
+	private char[] chars;
+	private int end;
+
+	private CharArrayView() {
+	}
+
+	/**
+	 * Returns a view on the chars of {@code chars} from 0 to {@code end}
+	 * (exclusive).
+	 */
+	static CharArrayView of(char[] chars, int end) {
+		if (end < 0 || end > chars.length)
+			throw new IndexOutOfBoundsException("end " + end + ", length " + chars.length);
+		CharArrayView result = SPARE.getAndSet(null);
+		if (result == null)
+			result = new CharArrayView();
+		result.chars = chars;
+		result.end = end;
+		return result;
+	}
+
+	void release() {
+		chars = null;
+		SPARE.set(this);
+	}
+
+	@Override
+	public int length() {
+		return end;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index >= end)
+			throw new IndexOutOfBoundsException("index " + index + ", length " + end);
+		return chars[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int stop) {
+		if (start < 0 || stop > end || start > stop)
+			throw new IndexOutOfBoundsException("start " + start + ", end " + stop + ", length " + end);
+		return new String(chars, start, stop - start);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, 0, end);
+	}
+
+}
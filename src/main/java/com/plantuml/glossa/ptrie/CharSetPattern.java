@@ -34,10 +34,22 @@
  */
 package com.plantuml.glossa.ptrie;
 
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A set of Unicode code points. ASCII is held in two bit masks, everything else
+ * in a sorted table of disjoint ranges searched by dichotomy.
+ */
 public class CharSetPattern implements SimplePattern {
 
+	private static final int ASCII = 128;
+
 	private long mask1 = 0L;
 	private long mask2 = 0L;
+	// Pairs of inclusive bounds, sorted, disjoint and not adjacent, all >= 128
+	private int[] ranges = new int[0];
+	private boolean negated;
 	private final String display;
 
 	public CharSetPattern(String display) {
@@ -59,22 +71,27 @@ public class CharSetPattern implements SimplePattern {
 		if (pattern.length() < 2 || pattern.charAt(0) != '「' || pattern.charAt(pattern.length() - 1) != '」')
 			throw new IllegalArgumentException("Pattern must start with 「 and end with 」.");
 
-		final String inner = pattern.substring(1, pattern.length() - 1);
+		String inner = pattern.substring(1, pattern.length() - 1);
 
 		if (inner.endsWith("〜"))
 			throw new IllegalArgumentException("Range operator '〜' must be followed by a character.");
 
 		final CharSetPattern result = new CharSetPattern(pattern);
+		if (inner.startsWith("〤")) {
+			result.negate();
+			inner = inner.substring(1);
+		}
 
-		for (int i = 0; i < inner.length(); i++) {
-			final char start = inner.charAt(i);
+		for (int i = 0; i < inner.length();) {
+			final int start = inner.codePointAt(i);
+			i += Character.charCount(start);
 
-			if (i + 1 < inner.length() && inner.charAt(i + 1) == '〜') {
-				i += 2;
-				final char end = inner.charAt(i);
+			if (i < inner.length() && inner.charAt(i) == '〜') {
+				final int end = inner.codePointAt(i + 1);
+				i += 1 + Character.charCount(end);
 				result.addRange(start, end);
 			} else {
-				result.addChar(start);
+				result.addCodePoint(start);
 			}
 		}
 
@@ -82,78 +99,189 @@ public class CharSetPattern implements SimplePattern {
 	}
 
 	public void addChar(char ch) {
-		final int offset = getOffset(ch);
-		if (ch < 32 || ch > 128)
-			throw new IllegalArgumentException("Bad char : " + ch);
-
-		if (offset < 64)
-			mask1 |= (1L << offset);
-		else
-			mask2 |= (1L << (offset - 64));
+		addCodePoint(ch);
+	}
 
+	public void addCodePoint(int codePoint) {
+		addRange(codePoint, codePoint);
 	}
 
-	public void addRange(char start, char end) {
+	public void addRange(int start, int end) {
 		if (start > end)
-			throw new IllegalArgumentException("Invalid range: '" + start + "' is greater than '" + end + "'.");
+			throw new IllegalArgumentException("Invalid range: '" + new String(Character.toChars(start))
+					+ "' is greater than '" + new String(Character.toChars(end)) + "'.");
 
-		if (start < 32 || end > 128)
-			throw new IllegalArgumentException("Characters must be in the range 32 to 128.");
+		if (start < 0 || end > Character.MAX_CODE_POINT)
+			throw new IllegalArgumentException("Not a code point: " + (start < 0 ? start : end));
 
-		final int startOffset = start - 32;
-		final int endOffset = end - 32;
+		if (start < 64)
+			mask1 |= bits(start, Math.min(end, 63));
+		if (start < ASCII && end >= 64)
+			mask2 |= bits(Math.max(start, 64) - 64, Math.min(end, ASCII - 1) - 64);
+		if (end >= ASCII)
+			insertRange(Math.max(start, ASCII), end);
+	}
 
-		// Case 1: Entire range is in mask1 (offsets 0 to 63)
-		if (endOffset < 64) {
-			int length = endOffset - startOffset + 1;
-			long rangeMask = (length == 64 ? -1L : ((1L << length) - 1)) << startOffset;
-			mask1 |= rangeMask;
-		}
-		// Case 2: Entire range is in mask2 (offsets 64 and above)
-		else if (startOffset >= 64) {
-			int adjustedStart = startOffset - 64;
-			int adjustedEnd = endOffset - 64;
-			int length = adjustedEnd - adjustedStart + 1;
-			long rangeMask = ((1L << length) - 1) << adjustedStart;
-			mask2 |= rangeMask;
+	/**
+	 * Adds every code point accepted by {@code filter}.
+	 */
+	void addIf(IntPredicate filter) {
+		int start = -1;
+		for (int cp = 0; cp <= Character.MAX_CODE_POINT + 1; cp++) {
+			final boolean in = cp <= Character.MAX_CODE_POINT && filter.test(cp);
+			if (in && start == -1) {
+				start = cp;
+			} else if (in == false && start != -1) {
+				addRange(start, cp - 1);
+				start = -1;
+			}
 		}
-		// Case 3: Range spans both mask1 and mask2
-		else {
-			// For mask1: add bits from startOffset up to bit 63
-			int length1 = 64 - startOffset;
-			long maskPart1 = (length1 == 64 ? -1L : ((1L << length1) - 1)) << startOffset;
-			mask1 |= maskPart1;
-
-			// For mask2: add bits from 0 up to (endOffset - 64)
-			int adjustedEnd = endOffset - 64;
-			int length2 = adjustedEnd + 1;
-			long maskPart2 = ((1L << length2) - 1);
-			mask2 |= maskPart2;
+	}
+
+	/**
+	 * Adds every code point of {@code other}, which must not be negated.
+	 */
+	void addAll(CharSetPattern other) {
+		if (other.negated)
+			throw new IllegalArgumentException("Cannot add a negated set");
+		mask1 |= other.mask1;
+		mask2 |= other.mask2;
+		for (int i = 0; i < other.ranges.length; i += 2)
+			insertRange(other.ranges[i], other.ranges[i + 1]);
+	}
+
+	private static long bits(int from, int to) {
+		final int length = to - from + 1;
+		return (length == 64 ? -1L : ((1L << length) - 1)) << from;
+	}
+
+	private void insertRange(int start, int end) {
+		// Merge with every range overlapping or touching [start, end]
+		int first = 0;
+		while (first < ranges.length && ranges[first + 1] < start - 1)
+			first += 2;
+		int last = first;
+		while (last < ranges.length && ranges[last] <= end + 1) {
+			start = Math.min(start, ranges[last]);
+			end = Math.max(end, ranges[last + 1]);
+			last += 2;
 		}
+		final int[] result = new int[ranges.length - (last - first) + 2];
+		System.arraycopy(ranges, 0, result, 0, first);
+		result[first] = start;
+		result[first + 1] = end;
+		System.arraycopy(ranges, last, result, first + 2, ranges.length - last);
+		ranges = result;
+	}
+
+	/**
+	 * Turns this set into its complement: every char not added is accepted.
+	 */
+	public void negate() {
+		negated = !negated;
 	}
 
 	public boolean contains(char ch) {
-		final int offset = getOffset(ch);
-		if (offset > 128)
-			return false;
-		if (offset < 64)
-			return (mask1 & (1L << offset)) != 0;
-		else
-			return (mask2 & (1L << (offset - 64))) != 0;
+		return contains((int) ch);
+	}
+
+	public boolean contains(int codePoint) {
+		return containsRaw(codePoint) != negated;
+	}
+
+	private boolean containsRaw(int cp) {
+		if (cp < ASCII)
+			// The shift only uses the 6 low bits of cp
+			return cp >= 0 && ((cp < 64 ? mask1 : mask2) & (1L << cp)) != 0;
+
+		int low = 0;
+		int high = ranges.length / 2 - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (cp < ranges[2 * mid])
+				high = mid - 1;
+			else if (cp > ranges[2 * mid + 1])
+				low = mid + 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Whether a code point belongs to both sets, which must not be negated.
+	 */
+	boolean intersects(CharSetPattern other) {
+		if ((mask1 & other.mask1) != 0 || (mask2 & other.mask2) != 0)
+			return true;
+		int i = 0;
+		int j = 0;
+		while (i < ranges.length && j < other.ranges.length)
+			if (ranges[i + 1] < other.ranges[j])
+				i += 2;
+			else if (other.ranges[j + 1] < ranges[i])
+				j += 2;
+			else
+				return true;
+		return false;
 	}
 
-	private int getOffset(char ch) {
-		return ch - 32;
+	long getMask1() {
+		return mask1;
+	}
+
+	long getMask2() {
+		return mask2;
+	}
+
+	int[] getRanges() {
+		return ranges;
+	}
+
+	boolean isNegated() {
+		return negated;
+	}
+
+	// Returns the only char of this set, or -1 if it holds zero or several
+	int singleChar() {
+		if (negated)
+			return -1;
+		final int count = Long.bitCount(mask1) + Long.bitCount(mask2);
+		if (count == 1 && ranges.length == 0)
+			return mask1 != 0 ? Long.numberOfTrailingZeros(mask1) : 64 + Long.numberOfTrailingZeros(mask2);
+		if (count == 0 && ranges.length == 2 && ranges[0] == ranges[1])
+			return ranges[0];
+		return -1;
+	}
+
+	/**
+	 * Returns true if every match of this set is exactly one char long, so that it
+	 * can be tested with {@link #contains(char)}. A set holding supplementary code
+	 * points, or a negated one, may consume a surrogate pair.
+	 */
+	boolean isSingleChar() {
+		return negated == false && (ranges.length == 0 || ranges[ranges.length - 1] <= Character.MAX_VALUE);
 	}
 
 	@Override
-	public int matches(String s, int pos) {
-		if (s.length() == pos)
+	public int matches(CharSequence s, int pos) {
+		if (pos >= s.length())
 			return 0;
-		if (this.contains(s.charAt(pos)))
-			return 1;
+		final int cp = Character.codePointAt(s, pos);
+		if (this.contains(cp))
+			return Character.charCount(cp);
 		return 0;
 
 	}
 
+	@Override
+	public int matches(char[] s, int pos, int end) {
+		if (pos >= end)
+			return 0;
+		final int cp = Character.codePointAt(s, pos, end);
+		if (this.contains(cp))
+			return Character.charCount(cp);
+		return 0;
+	}
+
 }
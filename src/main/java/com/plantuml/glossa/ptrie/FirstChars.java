@@ -0,0 +1,125 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+/**
+ * The chars a match can start with, used to skip quickly the parts of a text
+ * where no pattern can match.
+ */
+public final class FirstChars {
+
+	private static final FirstChars ANY = new FirstChars(null);
+
+	// null when any char may start a match
+	private final CharSetPattern set;
+	// The only char of the set, or -1
+	private final int single;
+
+	private FirstChars(CharSetPattern set) {
+		this.set = set;
+		this.single = set == null ? -1 : set.singleChar();
+	}
+
+	static FirstChars of(PatternTrie root) {
+		if (root.isTerminal())
+			return ANY;
+		final CharSetPattern set = new CharSetPattern();
+		return add(root, set) ? new FirstChars(set) : ANY;
+	}
+
+	static FirstChars of(PatternAutomaton automaton) {
+		if (automaton.patternIdOf(0) != -1)
+			return ANY;
+		final CharSetPattern set = new CharSetPattern();
+		return automaton.addFirstChars(set) ? new FirstChars(set) : ANY;
+	}
+
+	// Returns false when the first chars of a node are not known
+	private static boolean add(PatternTrie node, CharSetPattern set) {
+		for (char ch : node.getChildChars())
+			set.addChar(ch);
+		for (int i = 0; i < node.getPatternCount(); i++)
+			if (add(node.getPattern(i), set) == false)
+				return false;
+		return true;
+	}
+
+	static boolean add(SimplePattern pattern, CharSetPattern set) {
+		if (pattern instanceof SingleCharPattern) {
+			set.addChar(((SingleCharPattern) pattern).getChar());
+			return true;
+		}
+		if (pattern instanceof CharSetPattern && ((CharSetPattern) pattern).isSingleChar()) {
+			set.addAll((CharSetPattern) pattern);
+			return true;
+		}
+		if (pattern instanceof RepetitionPattern)
+			return add(((RepetitionPattern) pattern).getOrigin(), set);
+		if (pattern instanceof GroupPattern)
+			return add(((GroupPattern) pattern).getGroup(), set);
+		return false;
+	}
+
+	/**
+	 * Whether every char may start a match, in which case nothing can be skipped.
+	 */
+	public boolean isAny() {
+		return set == null;
+	}
+
+	public boolean contains(char ch) {
+		return set == null || set.contains(ch);
+	}
+
+	/**
+	 * Returns the first position between {@code from} and {@code to} (exclusive)
+	 * holding a char that may start a match, or {@code to} if there is none.
+	 */
+	public int next(CharSequence s, int from, int to) {
+		if (set == null)
+			return from < to ? from : to;
+
+		if (single != -1 && s instanceof String) {
+			final int result = ((String) s).indexOf(single, from);
+			return result == -1 || result > to ? to : result;
+		}
+
+		for (int pos = from; pos < to; pos++)
+			if (set.contains(s.charAt(pos)))
+				return pos;
+		return to;
+	}
+
+}
@@ -36,16 +36,44 @@ package com.plantuml.glossa.ptrie;
 
 public class GroupPattern implements SimplePattern {
 
+	private final String name;
+	private final int groupId;
 	private final PatternTrie group;
 
-	public GroupPattern(PatternTrie group) {
+	GroupPattern(String name, int groupId, PatternTrie group) {
+		this.name = name;
+		this.groupId = groupId;
 		this.group = group;
 	}
 
-	public int matches(String s, int pos) {
-		final String match = group.getLongestMatchStartingIn(s, pos);
-		return match.length();
+	public GroupPattern(String name, PatternTrie group) {
+		this(name, -1, group);
+	}
+
+	public GroupPattern(PatternTrie group) {
+		this(null, group);
+	}
+
+	/**
+	 * Name of the group, or null when it is unnamed.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Id of the named group in the captures, or -1 when it is unnamed.
+	 */
+	int getGroupId() {
+		return groupId;
+	}
+
+	PatternTrie getGroup() {
+		return group;
+	}
 
+	public int matches(CharSequence s, int pos) {
+		return group.matchLength(s, pos);
 	}
 
 }
@@ -0,0 +1,97 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+/**
+ * Mutable holder for the outcome of a match, meant to be reused across calls
+ * so that matching does not allocate.
+ */
+public final class MatchResult {
+
+	private int start;
+	private int end;
+	private int patternId = -1;
+	private String pattern;
+
+	void set(int start, int end, int patternId, String pattern) {
+		this.start = start;
+		this.end = end;
+		this.patternId = patternId;
+		this.pattern = pattern;
+	}
+
+	void clear(int start) {
+		set(start, start, -1, null);
+	}
+
+	public boolean matched() {
+		return patternId != -1;
+	}
+
+	public int start() {
+		return start;
+	}
+
+	public int end() {
+		return end;
+	}
+
+	public int length() {
+		return end - start;
+	}
+
+	/**
+	 * Index of the matched pattern, in the order patterns were added, or -1.
+	 */
+	public int patternId() {
+		return patternId;
+	}
+
+	/**
+	 * Source of the matched pattern, as given to
+	 * {@link PatternTrie#addPattern(String)}, or null.
+	 */
+	public String pattern() {
+		return pattern;
+	}
+
+	@Override
+	public String toString() {
+		if (matched() == false)
+			return "no match at " + start;
+		return pattern + " [" + start + "-" + end + "]";
+	}
+
+}
@@ -0,0 +1,839 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, table-driven form of a {@link PatternTrie}, built by
+ * {@link PatternTrie#compile()}.
+ *
+ * States are numbered from 0 (the root). ASCII chars are folded into
+ * equivalence classes so that literal edges and char set edges both become a
+ * single array lookup. Other chars use a sorted per-state table. When a char
+ * may take several edges of a state, or start a variable-length edge
+ * (repetition, group), the match goes on in a {@link PatternNfa} built from the
+ * states of the automaton, which gives the same result as the trie.
+ */
+public final class PatternAutomaton {
+
+	private static final int NONE = -1;
+	// Transition on a char that several edges may accept, or that may start a
+	// variable-length edge: the match goes on in the NFA
+	private static final int AMBIGUOUS = -2;
+	private static final int ASCII = 128;
+
+	private final int stateCount;
+	private final int[] patternIds;
+	private final String[] sources;
+	private final String[] groupNames;
+
+	private final byte[] asciiClass = new byte[ASCII];
+	private final int classCount;
+	// Start of the row of each state in asciiNext. The states without ASCII edges
+	// share the first row, where every class leads nowhere.
+	private final int[] asciiRow;
+	private final int[] asciiNext;
+
+	private final int[] sparseStart;
+	private final char[] sparseChars;
+	private final int[] sparseNext;
+
+	private final int[] setStart;
+	private final CharSetPattern[] sets;
+	private final int[] setNext;
+
+	private final int[] patternStart;
+	private final SimplePattern[] patterns;
+	private final int[] patternNext;
+
+	// First chars of the variable-length edges of each state, null if it has none
+	private final CharSetPattern[] variableFirst;
+	// Whether two single char edges of a state accept a same char
+	private final boolean[] overlapping;
+	// Null when every char takes at most one single char edge
+	// Its state i is the state i of the automaton
+	private final PatternNfa nfa;
+	private final int[] nfaNonLiteral;
+
+	// States are shared between paths, see minimize()
+	private final boolean minimized;
+	// Every match reports the pattern id 0, see minimize()
+	private final boolean anonymous;
+	private final FirstChars firstChars;
+
+	PatternAutomaton(PatternTrie root) {
+		final List<PatternTrie> nodes = new ArrayList<>();
+		final Map<PatternTrie, Integer> ids = new IdentityHashMap<>();
+		register(root, nodes, ids);
+		for (int i = 0; i < nodes.size(); i++) {
+			final PatternTrie node = nodes.get(i);
+			for (char ch : node.getChildChars())
+				register(node.getChild(ch), nodes, ids);
+			for (int k = 0; k < node.getPatternCount(); k++)
+				register(node.getPatternChild(k), nodes, ids);
+		}
+
+		this.stateCount = nodes.size();
+		this.patternIds = new int[stateCount];
+		for (int i = 0; i < stateCount; i++)
+			patternIds[i] = nodes.get(i).getPatternId();
+		this.sources = root.getSources() == null ? new String[0] : root.getSources().toArray(new String[0]);
+		this.groupNames = root.getGroupNames() == null ? new String[0]
+				: root.getGroupNames().toArray(new String[0]);
+
+		this.variableFirst = new CharSetPattern[stateCount];
+		this.overlapping = new boolean[stateCount];
+		boolean deterministic = true;
+		for (int i = 0; i < stateCount; i++) {
+			variableFirst[i] = variableFirst(nodes.get(i));
+			overlapping[i] = overlapping(nodes.get(i));
+			deterministic &= variableFirst[i] == null && overlapping[i] == false;
+		}
+
+		// Splits ASCII chars into classes that behave the same way in every state
+		final int[] targets = new int[ASCII];
+		int[] classes = new int[ASCII];
+		int count = 1;
+		int rows = 1;
+		for (int i = 0; i < stateCount; i++) {
+			if (asciiTargets(nodes.get(i), variableFirst[i], ids, targets) == false)
+				continue;
+			rows++;
+			final Map<Long, Integer> split = new HashMap<>();
+			final int[] refined = new int[ASCII];
+			for (int c = 0; c < ASCII; c++) {
+				final Long key = ((long) classes[c] << 32) | (targets[c] & 0xFFFFFFFFL);
+				Integer id = split.get(key);
+				if (id == null) {
+					id = split.size();
+					split.put(key, id);
+				}
+				refined[c] = id;
+			}
+			classes = refined;
+			count = split.size();
+		}
+		this.classCount = count;
+		final char[] representative = new char[count];
+		for (int c = ASCII - 1; c >= 0; c--) {
+			asciiClass[c] = (byte) classes[c];
+			representative[classes[c]] = (char) c;
+		}
+
+		this.asciiRow = new int[stateCount];
+		this.asciiNext = new int[rows * classCount];
+		Arrays.fill(asciiNext, NONE);
+		int row = 0;
+		for (int i = 0; i < stateCount; i++)
+			if (asciiTargets(nodes.get(i), variableFirst[i], ids, targets)) {
+				asciiRow[i] = ++row * classCount;
+				for (int k = 0; k < classCount; k++)
+					asciiNext[asciiRow[i] + k] = targets[representative[k]];
+			}
+
+		// Every literal edge (only looked up for non ASCII chars when matching, and
+		// by the scanner), every char set edge and the variable-length edges
+		this.sparseStart = new int[stateCount + 1];
+		this.setStart = new int[stateCount + 1];
+		this.patternStart = new int[stateCount + 1];
+		final StringBuilder chars = new StringBuilder();
+		final List<Integer> charTargets = new ArrayList<>();
+		final List<CharSetPattern> setList = new ArrayList<>();
+		final List<Integer> setTargets = new ArrayList<>();
+		final List<SimplePattern> patternList = new ArrayList<>();
+		final List<Integer> patternTargets = new ArrayList<>();
+		for (int i = 0; i < stateCount; i++) {
+			final PatternTrie node = nodes.get(i);
+			sparseStart[i] = chars.length();
+			setStart[i] = setList.size();
+			patternStart[i] = patternList.size();
+
+			for (char ch : node.getChildChars()) {
+				chars.append(ch);
+				charTargets.add(ids.get(node.getChild(ch)));
+			}
+
+			for (int k = 0; k < node.getPatternCount(); k++) {
+				final SimplePattern pattern = node.getPattern(k);
+				if (pattern instanceof CharSetPattern && ((CharSetPattern) pattern).isSingleChar()) {
+					setList.add((CharSetPattern) pattern);
+					setTargets.add(ids.get(node.getPatternChild(k)));
+				} else {
+					patternList.add(pattern);
+					patternTargets.add(ids.get(node.getPatternChild(k)));
+				}
+			}
+		}
+		sparseStart[stateCount] = chars.length();
+		setStart[stateCount] = setList.size();
+		patternStart[stateCount] = patternList.size();
+
+		this.sparseChars = chars.toString().toCharArray();
+		this.sparseNext = toArray(charTargets);
+		this.sets = setList.toArray(new CharSetPattern[0]);
+		this.setNext = toArray(setTargets);
+		this.patterns = patternList.toArray(new SimplePattern[0]);
+		this.patternNext = toArray(patternTargets);
+		this.minimized = false;
+		this.anonymous = false;
+		this.firstChars = FirstChars.of(this);
+		this.nfaNonLiteral = new int[stateCount];
+		this.nfa = deterministic ? null : new PatternNfa(this, sources, groupNames, nfaNonLiteral);
+	}
+
+	// Keeps one state of each class, the one with the lowest number
+	private PatternAutomaton(PatternAutomaton origin, int[] classOf, int count, boolean keepPatternIds) {
+		final int[] representative = new int[count];
+		Arrays.fill(representative, NONE);
+		for (int i = 0; i < origin.stateCount; i++)
+			if (representative[classOf[i]] == NONE)
+				representative[classOf[i]] = i;
+
+		this.stateCount = count;
+		this.patternIds = new int[count];
+		for (int c = 0; c < count; c++) {
+			final int id = origin.patternIds[representative[c]];
+			patternIds[c] = keepPatternIds || id == -1 ? id : 0;
+		}
+		this.sources = keepPatternIds ? origin.sources : new String[] { null };
+		this.groupNames = origin.groupNames;
+
+		System.arraycopy(origin.asciiClass, 0, asciiClass, 0, ASCII);
+		this.classCount = origin.classCount;
+		this.asciiRow = new int[count];
+		int rows = 1;
+		for (int c = 0; c < count; c++)
+			if (origin.asciiRow[representative[c]] != 0)
+				asciiRow[c] = rows++ * classCount;
+		this.asciiNext = new int[rows * classCount];
+		Arrays.fill(asciiNext, 0, classCount, NONE);
+		for (int c = 0; c < count; c++)
+			if (asciiRow[c] != 0)
+				for (int k = 0; k < classCount; k++) {
+					final int target = origin.asciiNext[origin.asciiRow[representative[c]] + k];
+					asciiNext[asciiRow[c] + k] = target < 0 ? target : classOf[target];
+				}
+		this.variableFirst = new CharSetPattern[count];
+		this.overlapping = new boolean[count];
+		for (int c = 0; c < count; c++) {
+			variableFirst[c] = origin.variableFirst[representative[c]];
+			overlapping[c] = origin.overlapping[representative[c]];
+		}
+
+		this.sparseStart = new int[count + 1];
+		this.setStart = new int[count + 1];
+		this.patternStart = new int[count + 1];
+		int sparseSize = 0;
+		int setSize = 0;
+		int patternSize = 0;
+		for (int c = 0; c < count; c++) {
+			final int r = representative[c];
+			sparseSize += origin.sparseStart[r + 1] - origin.sparseStart[r];
+			setSize += origin.setStart[r + 1] - origin.setStart[r];
+			patternSize += origin.patternStart[r + 1] - origin.patternStart[r];
+		}
+		this.sparseChars = new char[sparseSize];
+		this.sparseNext = new int[sparseSize];
+		this.sets = new CharSetPattern[setSize];
+		this.setNext = new int[setSize];
+		this.patterns = new SimplePattern[patternSize];
+		this.patternNext = new int[patternSize];
+		sparseSize = 0;
+		setSize = 0;
+		patternSize = 0;
+		for (int c = 0; c < count; c++) {
+			final int r = representative[c];
+			sparseStart[c] = sparseSize;
+			for (int i = origin.sparseStart[r]; i < origin.sparseStart[r + 1]; i++, sparseSize++) {
+				sparseChars[sparseSize] = origin.sparseChars[i];
+				sparseNext[sparseSize] = classOf[origin.sparseNext[i]];
+			}
+			setStart[c] = setSize;
+			for (int i = origin.setStart[r]; i < origin.setStart[r + 1]; i++, setSize++) {
+				sets[setSize] = origin.sets[i];
+				setNext[setSize] = classOf[origin.setNext[i]];
+			}
+			patternStart[c] = patternSize;
+			for (int i = origin.patternStart[r]; i < origin.patternStart[r + 1]; i++, patternSize++) {
+				patterns[patternSize] = origin.patterns[i];
+				patternNext[patternSize] = classOf[origin.patternNext[i]];
+			}
+		}
+		sparseStart[count] = sparseSize;
+		setStart[count] = setSize;
+		patternStart[count] = patternSize;
+		this.minimized = true;
+		this.anonymous = origin.anonymous || keepPatternIds == false;
+		this.firstChars = origin.firstChars;
+		// Rebuilt on the merged states, so that the original trie can be collected
+		this.nfaNonLiteral = new int[count];
+		this.nfa = origin.nfa == null ? null : new PatternNfa(this, sources, groupNames, nfaNonLiteral);
+	}
+
+	/**
+	 * Returns an equivalent automaton where states having the same future (same
+	 * pattern id, same edges to equivalent states) are merged, turning the trie
+	 * into a directed acyclic word graph: common suffixes such as {@code _start}
+	 * or a plural {@code s} are then stored once. Compare {@link #stateCount()}
+	 * before and after to see the gain.
+	 *
+	 * When {@code keepPatternIds} is false, states only need to agree on whether
+	 * they end a match, which merges much more for vocabularies where each word is
+	 * its own pattern; every match then reports the pattern id 0, with a null
+	 * source.
+	 *
+	 * Since a state can be reached by several paths, the result cannot be used
+	 * with {@link #scanner()}.
+	 */
+	public PatternAutomaton minimize(boolean keepPatternIds) {
+		final Map<Object, Integer> edgePatterns = new IdentityHashMap<>();
+		for (SimplePattern pattern : sets)
+			edgePatterns.putIfAbsent(pattern, edgePatterns.size());
+		for (SimplePattern pattern : patterns)
+			edgePatterns.putIfAbsent(pattern, edgePatterns.size());
+
+		// Moore's partition refinement, starting from the pattern ids
+		int[] classOf = new int[stateCount];
+		for (int i = 0; i < stateCount; i++)
+			classOf[i] = keepPatternIds ? patternIds[i] + 1 : (patternIds[i] == -1 ? 0 : 1);
+		int count = -1;
+		while (true) {
+			final Map<Signature, Integer> split = new HashMap<>();
+			final int[] refined = new int[stateCount];
+			for (int i = 0; i < stateCount; i++) {
+				final Signature key = signature(i, classOf, edgePatterns);
+				Integer id = split.get(key);
+				if (id == null) {
+					id = split.size();
+					split.put(key, id);
+				}
+				refined[i] = id;
+			}
+			classOf = refined;
+			if (split.size() == count)
+				break;
+			count = split.size();
+		}
+		// The root is state 0 and its class is 0, since it is numbered first
+		return new PatternAutomaton(this, classOf, count, keepPatternIds);
+	}
+
+	private Signature signature(int state, int[] classOf, Map<Object, Integer> edgePatterns) {
+		final int[] result = new int[1 + classCount + 2 * (sparseStart[state + 1] - sparseStart[state])
+				+ 2 * (setStart[state + 1] - setStart[state]) + 2 * (patternStart[state + 1] - patternStart[state])
+				+ 2];
+		int n = 0;
+		result[n++] = classOf[state];
+		for (int k = 0; k < classCount; k++) {
+			final int target = asciiNext[asciiRow[state] + k];
+			result[n++] = target < 0 ? target : classOf[target];
+		}
+		for (int i = sparseStart[state]; i < sparseStart[state + 1]; i++) {
+			result[n++] = sparseChars[i];
+			result[n++] = classOf[sparseNext[i]];
+		}
+		// Separates the edge lists, whose sizes differ from one state to another
+		result[n++] = NONE;
+		for (int i = setStart[state]; i < setStart[state + 1]; i++) {
+			result[n++] = edgePatterns.get(sets[i]);
+			result[n++] = classOf[setNext[i]];
+		}
+		result[n++] = NONE;
+		for (int i = patternStart[state]; i < patternStart[state + 1]; i++) {
+			result[n++] = edgePatterns.get(patterns[i]);
+			result[n++] = classOf[patternNext[i]];
+		}
+		return new Signature(result);
+	}
+
+	private static final class Signature {
+
+		private final int[] values;
+		private final int hash;
+
+		Signature(int[] values) {
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Signature && Arrays.equals(values, ((Signature) other).values);
+		}
+	}
+
+	private static void register(PatternTrie node, List<PatternTrie> nodes, Map<PatternTrie, Integer> ids) {
+		if (ids.containsKey(node) == false) {
+			ids.put(node, nodes.size());
+			nodes.add(node);
+		}
+	}
+
+	// Returns the first chars of the variable-length edges of a node, or null
+	// if it has none
+	private static CharSetPattern variableFirst(PatternTrie node) {
+		CharSetPattern result = null;
+		for (int k = 0; k < node.getPatternCount(); k++) {
+			final SimplePattern pattern = node.getPattern(k);
+			if (PatternTrie.isSingleChar(pattern))
+				continue;
+			if (result == null)
+				result = new CharSetPattern();
+			if (FirstChars.add(pattern, result) == false) {
+				// Unknown: any char may start it
+				result = new CharSetPattern();
+				result.negate();
+				return result;
+			}
+		}
+		return result;
+	}
+
+	private static boolean overlapping(PatternTrie node) {
+		for (int k = 0; k < node.getPatternCount(); k++) {
+			final SimplePattern pattern = node.getPattern(k);
+			if (PatternTrie.isSingleChar(pattern) == false)
+				continue;
+			for (char ch : node.getChildChars())
+				if (PatternTrie.accepts(pattern, ch))
+					return true;
+			for (int j = 0; j < k; j++)
+				if (PatternTrie.isSingleChar(node.getPattern(j)) && overlaps(pattern, node.getPattern(j)))
+					return true;
+		}
+		return false;
+	}
+
+	private static boolean overlaps(SimplePattern a, SimplePattern b) {
+		if (a instanceof SingleCharPattern)
+			return PatternTrie.accepts(b, ((SingleCharPattern) a).getChar());
+		if (b instanceof SingleCharPattern)
+			return PatternTrie.accepts(a, ((SingleCharPattern) b).getChar());
+		return ((CharSetPattern) a).intersects((CharSetPattern) b);
+	}
+
+	private static boolean asciiTargets(PatternTrie node, CharSetPattern variableFirst, Map<PatternTrie, Integer> ids,
+			int[] targets) {
+		boolean result = false;
+		for (int c = 0; c < ASCII; c++) {
+			targets[c] = NONE;
+			if (variableFirst != null && variableFirst.contains((char) c)) {
+				targets[c] = AMBIGUOUS;
+				result = true;
+				continue;
+			}
+			final PatternTrie child = node.getChild((char) c);
+			if (child != null)
+				targets[c] = ids.get(child);
+			for (int k = 0; k < node.getPatternCount() && targets[c] != AMBIGUOUS; k++) {
+				final SimplePattern pattern = node.getPattern(k);
+				if (PatternTrie.isSingleChar(pattern) && PatternTrie.accepts(pattern, (char) c))
+					targets[c] = targets[c] == NONE ? ids.get(node.getPatternChild(k)) : AMBIGUOUS;
+			}
+			result |= targets[c] != NONE;
+		}
+		return result;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		final int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = list.get(i);
+		return result;
+	}
+
+	public int stateCount() {
+		return stateCount;
+	}
+
+	public int groupCount() {
+		return groupNames.length;
+	}
+
+	/**
+	 * Returns the id of the named group, or -1 if no pattern defines it.
+	 */
+	public int getGroupId(String name) {
+		for (int i = 0; i < groupNames.length; i++)
+			if (groupNames[i].equals(name))
+				return i;
+		return -1;
+	}
+
+	public String getLongestMatchStartingIn(String s, int pos) {
+		return s.substring(pos, matchEnd(s, pos, null, null));
+	}
+
+	/**
+	 * Returns the length of the longest match starting at {@code pos}, or 0 when
+	 * no pattern matches. Any CharSequence can be matched in place, such as a
+	 * StringBuilder or a CharBuffer (offsets are then relative to its position).
+	 */
+	public int matchLength(CharSequence s, int pos) {
+		return matchEnd(s, pos, null, null) - pos;
+	}
+
+	/**
+	 * Fills {@code result} with the longest match starting at {@code pos} and
+	 * returns whether a pattern matched.
+	 */
+	public boolean match(CharSequence s, int pos, MatchResult result) {
+		matchEnd(s, pos, result, null);
+		return result.matched();
+	}
+
+	/**
+	 * Same as {@link #matchLength(CharSequence, int)} on the chars of {@code s}
+	 * between {@code pos} and {@code end} (exclusive).
+	 */
+	public int matchLength(char[] s, int pos, int end) {
+		final CharArrayView view = CharArrayView.of(s, end);
+		try {
+			return matchEnd(view, pos, null, null) - pos;
+		} finally {
+			view.release();
+		}
+	}
+
+	public boolean match(char[] s, int pos, int end, MatchResult result) {
+		final CharArrayView view = CharArrayView.of(s, end);
+		try {
+			matchEnd(view, pos, result, null);
+		} finally {
+			view.release();
+		}
+		return result.matched();
+	}
+
+	/**
+	 * Same as {@link #matchLength(CharSequence, int)}, also filling
+	 * {@code captures} with the span of each named group of the match: group
+	 * {@code id} starts at {@code captures[2 * id]} and ends at
+	 * {@code captures[2 * id + 1]}, both -1 when the group did not take part. Use
+	 * {@link #getGroupId(String)} once to get the ids.
+	 */
+	public int matchLength(CharSequence s, int pos, int[] captures) {
+		if (captures.length < 2 * groupCount())
+			throw new IllegalArgumentException("captures must hold " + 2 * groupCount() + " offsets");
+		Arrays.fill(captures, -1);
+		return matchEnd(s, pos, null, captures) - pos;
+	}
+
+	private int matchEnd(CharSequence s, int pos, MatchResult result, int[] captures) {
+		final int start = pos;
+		int state = 0;
+		int longest = pos;
+		int matched = patternIds[0];
+		while (pos < s.length()) {
+			final int next = next(state, s.charAt(pos));
+			if (next == AMBIGUOUS) {
+				final int end = nfa.matchFrom(s, start, pos, state, result, captures);
+				if (end != -1) {
+					if (anonymous && result != null)
+						result.set(start, end, 0, sources[0]);
+					return end;
+				}
+				break;
+			}
+			if (next == NONE)
+				break;
+
+			pos++;
+			state = next;
+			if (patternIds[state] != -1) {
+				longest = pos;
+				matched = patternIds[state];
+			}
+		}
+		if (result != null)
+			if (matched == -1)
+				result.clear(start);
+			else
+				result.set(start, longest, matched, sources[matched]);
+
+		return longest;
+	}
+
+	// The state reached from state by ch, NONE, or AMBIGUOUS
+	private int next(int state, char ch) {
+		return ch < ASCII ? asciiNext[asciiRow[state] + asciiClass[ch]] : nonAsciiNext(state, ch);
+	}
+
+	/**
+	 * Returns the name of the pattern with the given id.
+	 */
+	public String pattern(int patternId) {
+		return sources[patternId];
+	}
+
+	/**
+	 * Writes this automaton in the binary format read by {@link PatternSnapshot}.
+	 * Only literal edges and edges of non negated sets of BMP chars can be
+	 * written, when no char may take two edges of a state: repetitions, groups,
+	 * other sets and overlapping edges make this method throw an
+	 * IllegalStateException.
+	 */
+	public void writeSnapshot(OutputStream os) throws IOException {
+		if (patterns.length > 0)
+			throw new IllegalStateException("Cannot write " + describe(patterns[0]) + " to a snapshot");
+		if (nfa != null)
+			throw new IllegalStateException("Edges accepting a same char cannot be written to a snapshot");
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		out.writeInt(PatternSnapshot.MAGIC);
+		out.writeInt(PatternSnapshot.VERSION);
+		out.writeInt(stateCount);
+		out.writeInt(classCount);
+		out.writeInt(asciiNext.length / classCount);
+		out.writeInt(sparseChars.length);
+		out.writeInt(sets.length);
+		out.writeInt(sources.length);
+		out.write(asciiClass);
+		writeInts(out, patternIds);
+		writeInts(out, asciiRow);
+		writeInts(out, asciiNext);
+		writeInts(out, sparseStart);
+		for (char ch : sparseChars)
+			out.writeChar(ch);
+		writeInts(out, sparseNext);
+		writeInts(out, setStart);
+		writeInts(out, setNext);
+
+		int offset = 0;
+		for (CharSetPattern set : sets) {
+			out.writeInt(offset);
+			offset += PatternSnapshot.setSize(set);
+		}
+		out.writeInt(offset);
+		for (CharSetPattern set : sets) {
+			out.writeLong(set.getMask1());
+			out.writeLong(set.getMask2());
+			out.writeInt(set.getRanges().length);
+			writeInts(out, set.getRanges());
+		}
+
+		offset = 0;
+		for (String source : sources) {
+			out.writeInt(offset);
+			offset += source == null ? 0 : source.length();
+		}
+		out.writeInt(offset);
+		for (String source : sources)
+			if (source != null)
+				out.writeChars(source);
+		out.flush();
+	}
+
+	// Names an edge that only the NFA can follow
+	private static String describe(SimplePattern pattern) {
+		if (pattern instanceof RepetitionPattern)
+			return "the repetition of " + describe(((RepetitionPattern) pattern).getOrigin());
+		if (pattern instanceof GroupPattern)
+			return "a group";
+		if (pattern instanceof CharSetPattern)
+			return (((CharSetPattern) pattern).isNegated() ? "the negated set " : "the set with supplementary code points ")
+					+ pattern;
+		if (pattern instanceof SingleCharPattern)
+			return "'" + ((SingleCharPattern) pattern).getChar() + "'";
+		return "the pattern " + pattern;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		for (int value : values)
+			out.writeInt(value);
+	}
+
+	/**
+	 * Returns a scanner reporting every match of this automaton in a text.
+	 */
+	public PatternScanner scanner() {
+		if (minimized)
+			throw new IllegalStateException("A minimized automaton cannot be scanned");
+		return new PatternScanner(this);
+	}
+
+	/**
+	 * Returns the chars a match can start with.
+	 */
+	public FirstChars firstChars() {
+		return firstChars;
+	}
+
+	// Adds the first chars of the edges leaving the root, returns false when
+	// they are not known
+	boolean addFirstChars(CharSetPattern set) {
+		for (int c = 0; c < ASCII; c++)
+			if (asciiNext[asciiRow[0] + asciiClass[c]] != NONE)
+				set.addChar((char) c);
+		for (int i = sparseStart[0]; i < sparseStart[1]; i++)
+			set.addChar(sparseChars[i]);
+		for (int i = setStart[0]; i < setStart[1]; i++)
+			set.addAll(sets[i]);
+		for (int i = patternStart[0]; i < patternStart[1]; i++)
+			if (FirstChars.add(patterns[i], set) == false)
+				return false;
+		return true;
+	}
+
+	int patternIdOf(int state) {
+		return patternIds[state];
+	}
+
+	int literalNext(int state, char ch) {
+		int low = sparseStart[state];
+		int high = sparseStart[state + 1] - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final char key = sparseChars[mid];
+			if (key < ch)
+				low = mid + 1;
+			else if (key > ch)
+				high = mid - 1;
+			else
+				return sparseNext[mid];
+		}
+		return NONE;
+	}
+
+	int literalCount(int state) {
+		return sparseStart[state + 1] - sparseStart[state];
+	}
+
+	char literalChar(int state, int i) {
+		return sparseChars[sparseStart[state] + i];
+	}
+
+	int literalTarget(int state, int i) {
+		return sparseNext[sparseStart[state] + i];
+	}
+
+	// The char set edges then the variable-length edges of a state
+	int edgeCount(int state) {
+		return setStart[state + 1] - setStart[state] + patternStart[state + 1] - patternStart[state];
+	}
+
+	SimplePattern edgePattern(int state, int i) {
+		final int sets = setStart[state + 1] - setStart[state];
+		return i < sets ? this.sets[setStart[state] + i] : patterns[patternStart[state] + i - sets];
+	}
+
+	int edgeTarget(int state, int i) {
+		final int sets = setStart[state + 1] - setStart[state];
+		return i < sets ? setNext[setStart[state] + i] : patternNext[patternStart[state] + i - sets];
+	}
+
+	boolean hasNonLiteralEdges(int state) {
+		return setStart[state] < setStart[state + 1] || patternStart[state] < patternStart[state + 1];
+	}
+
+	/**
+	 * Reports the matches going through one of the non literal edges of
+	 * {@code state}, taken at {@code pos}. Past that edge, the path is followed
+	 * the same way as {@link #matchLength(CharSequence, int)} does.
+	 */
+	void followNonLiteral(CharSequence s, int end, int state, int start, int pos, MatchHandler handler) {
+		if (pos >= end)
+			return;
+
+		// The NFA follows the variable-length edges, and the char set edges with them
+		if (patternStart[state] < patternStart[state + 1]) {
+			nfa.reportFrom(s, end, nfaNonLiteral[state], start, pos, handler);
+			return;
+		}
+
+		final char ch = s.charAt(pos);
+		for (int i = setStart[state]; i < setStart[state + 1]; i++)
+			if (sets[i].contains(ch))
+				follow(s, end, setNext[i], start, pos + 1, handler);
+	}
+
+	private void follow(CharSequence s, int end, int state, int start, int pos, MatchHandler handler) {
+		while (true) {
+			final int next = pos < end ? next(state, s.charAt(pos)) : NONE;
+			if (next == AMBIGUOUS) {
+				nfa.reportFrom(s, end, state, start, pos, handler);
+				return;
+			}
+			if (patternIds[state] != -1)
+				handler.onMatch(start, pos, patternIds[state]);
+			if (next == NONE)
+				return;
+
+			pos++;
+			state = next;
+		}
+	}
+
+	private int nonAsciiNext(int state, char ch) {
+		if (variableFirst[state] != null && variableFirst[state].contains(ch))
+			return AMBIGUOUS;
+
+		final int literal = literalNext(state, ch);
+		if (overlapping[state]) {
+			int result = literal;
+			for (int i = setStart[state]; i < setStart[state + 1]; i++)
+				if (sets[i].contains(ch)) {
+					if (result != NONE)
+						return AMBIGUOUS;
+					result = setNext[i];
+				}
+			return result;
+		}
+		if (literal != NONE)
+			return literal;
+
+		for (int i = setStart[state]; i < setStart[state + 1]; i++)
+			if (sets[i].contains(ch))
+				return setNext[i];
+
+		return NONE;
+	}
+
+}
@@ -0,0 +1,612 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thompson-style matcher for a {@link PatternTrie}, built by
+ * {@link PatternTrie#compileNfa()}, or for the states of a
+ * {@link PatternAutomaton}.
+ *
+ * Where a walk committing to one edge per char can miss a match, this matcher
+ * follows every edge at once: all the active states are advanced together, one
+ * char at a time. The result is always the true longest match, and the cost is
+ * bounded by O(length × states) whatever the patterns, since nothing is ever
+ * backtracked. The trie and the automaton hand their matches over to it from
+ * the first state where committing to one edge could miss a match.
+ *
+ * Repetitions and groups are expanded into states, named groups being enclosed
+ * by two states recording their span. Only unknown {@link SimplePattern}
+ * implementations are still run as a whole, and their target is activated once
+ * the input has reached the end of their match.
+ */
+public final class PatternNfa {
+
+	private static final int EPSILON = 0;
+	private static final int CHAR = 1;
+	private static final int SET = 2;
+	private static final int MATCH = 3;
+	private static final int OPAQUE = 4;
+	private static final int SAVE = 5;
+
+	private static final int[] NO_TARGET = new int[0];
+
+	private final int stateCount;
+	private final int[] kinds;
+	private final char[] chars;
+	private final CharSetPattern[] sets;
+	private final SimplePattern[] opaques;
+	// Target of CHAR, SET, OPAQUE and SAVE states, pattern id of MATCH states
+	private final int[] next;
+	// Capture offset written by SAVE states
+	private final int[] slots;
+	private final int[][] epsilons;
+	private final int start;
+	private final String[] sources;
+	private final String[] groupNames;
+	private final int slotCount;
+
+	// States of the nodes of the top-level trie, and of their non literal edges
+	private final Map<PatternTrie, Integer> entries;
+	private final Map<PatternTrie, Integer> nonLiteralEntries;
+
+	// A run kept for the next match, so that matching does not allocate
+	private final AtomicReference<Run> spare = new AtomicReference<>();
+
+	PatternNfa(PatternTrie root) {
+		this(Builder.of(root), toStrings(root.getSources()), toStrings(root.getGroupNames()));
+	}
+
+	// State i of the automaton is the state i here. The state following the non
+	// literal edges of each state is stored in nonLiteral, -1 if it has none.
+	PatternNfa(PatternAutomaton automaton, String[] sources, String[] groupNames, int[] nonLiteral) {
+		this(Builder.of(automaton, nonLiteral), sources, groupNames);
+	}
+
+	private PatternNfa(Builder builder, String[] sources, String[] groupNames) {
+		this.start = builder.start;
+		this.entries = builder.entries;
+		this.nonLiteralEntries = builder.nonLiteralEntries;
+		this.stateCount = builder.kinds.size();
+		this.kinds = new int[stateCount];
+		this.chars = new char[stateCount];
+		this.sets = new CharSetPattern[stateCount];
+		this.opaques = new SimplePattern[stateCount];
+		this.next = new int[stateCount];
+		this.slots = new int[stateCount];
+		this.epsilons = new int[stateCount][];
+		int maxSlot = -1;
+		for (int i = 0; i < stateCount; i++) {
+			kinds[i] = builder.kinds.get(i);
+			chars[i] = builder.chars.get(i);
+			next[i] = builder.next.get(i);
+			final Object payload = builder.payloads.get(i);
+			if (kinds[i] == SET)
+				sets[i] = (CharSetPattern) payload;
+			else if (kinds[i] == SAVE)
+				maxSlot = Math.max(maxSlot, slots[i] = (Integer) payload);
+			else if (payload instanceof SimplePattern)
+				opaques[i] = (SimplePattern) payload;
+			epsilons[i] = builder.epsilons.get(i);
+		}
+		this.sources = sources;
+		this.groupNames = groupNames;
+		// The groups of a nested trie are numbered by its root
+		this.slotCount = Math.max(maxSlot + 1, 2 * groupNames.length);
+	}
+
+	private static String[] toStrings(List<String> list) {
+		return list == null ? new String[0] : list.toArray(new String[0]);
+	}
+
+	static class Builder {
+
+		private final Map<PatternTrie, Integer> entries = new IdentityHashMap<>();
+		private final Map<PatternTrie, Integer> nonLiteralEntries = new IdentityHashMap<>();
+		private int start;
+		private final List<Integer> kinds = new ArrayList<>();
+		private final List<Character> chars = new ArrayList<>();
+		private final List<Integer> next = new ArrayList<>();
+		private final List<Object> payloads = new ArrayList<>();
+		private final List<int[]> epsilons = new ArrayList<>();
+		// The last target each pattern was built for, and the resulting state: the
+		// branches of a trie joined by a shared edge share its states as well
+		private final Map<SimplePattern, int[]> built = new IdentityHashMap<>();
+
+		static Builder of(PatternTrie root) {
+			final Builder result = new Builder();
+			result.start = result.trie(root, -1, result.entries, result.nonLiteralEntries);
+			return result;
+		}
+
+		// Same as trie() for every state of the automaton at once, state i being
+		// numbered i
+		static Builder of(PatternAutomaton automaton, int[] nonLiteral) {
+			final Builder result = new Builder();
+			final int count = automaton.stateCount();
+			for (int i = 0; i < count; i++)
+				result.add(EPSILON, '\0', null, -1);
+			for (int i = 0; i < count; i++) {
+				final List<Integer> targets = new ArrayList<>();
+				if (automaton.patternIdOf(i) != -1)
+					targets.add(result.add(MATCH, '\0', null, automaton.patternIdOf(i)));
+				for (int k = 0; k < automaton.literalCount(i); k++)
+					targets.add(result.add(CHAR, automaton.literalChar(i, k), null, automaton.literalTarget(i, k)));
+				nonLiteral[i] = -1;
+				if (automaton.edgeCount(i) > 0) {
+					final int[] edges = new int[automaton.edgeCount(i)];
+					for (int k = 0; k < edges.length; k++)
+						edges[k] = result.pattern(automaton.edgePattern(i, k), automaton.edgeTarget(i, k));
+					nonLiteral[i] = result.epsilon(edges);
+					targets.add(nonLiteral[i]);
+				}
+				result.epsilons.set(i, toArray(targets));
+			}
+			result.start = 0;
+			return result;
+		}
+
+		private int add(int kind, char ch, Object payload, int target) {
+			kinds.add(kind);
+			chars.add(ch);
+			payloads.add(payload);
+			next.add(target);
+			epsilons.add(NO_TARGET);
+			return kinds.size() - 1;
+		}
+
+		private int epsilon(int[] targets) {
+			final int result = add(EPSILON, '\0', null, -1);
+			epsilons.set(result, targets);
+			return result;
+		}
+
+		// The states of a trie. Its terminal nodes lead to a MATCH state when out is
+		// -1 (top level), or to the state out otherwise (nested group). The non
+		// literal edges of a node get their own state, recorded in nonLiteral when
+		// it is not null.
+		int trie(PatternTrie node, int out, Map<PatternTrie, Integer> done, Map<PatternTrie, Integer> nonLiteral) {
+			final Integer already = done.get(node);
+			if (already != null)
+				return already;
+
+			final int result = add(EPSILON, '\0', null, -1);
+			done.put(node, result);
+			final List<Integer> targets = new ArrayList<>();
+			if (node.isTerminal())
+				targets.add(out == -1 ? add(MATCH, '\0', null, node.getPatternId()) : out);
+			for (char ch : node.getChildChars())
+				targets.add(add(CHAR, ch, null, trie(node.getChild(ch), out, done, nonLiteral)));
+			if (node.getPatternCount() > 0) {
+				final int[] edges = new int[node.getPatternCount()];
+				for (int i = 0; i < edges.length; i++)
+					edges[i] = pattern(node.getPattern(i), trie(node.getPatternChild(i), out, done, nonLiteral));
+				final int edgesState = epsilon(edges);
+				targets.add(edgesState);
+				if (nonLiteral != null)
+					nonLiteral.put(node, edgesState);
+			}
+
+			epsilons.set(result, toArray(targets));
+			return result;
+		}
+
+		int pattern(SimplePattern pattern, int out) {
+			final int[] already = built.get(pattern);
+			if (already != null && already[0] == out)
+				return already[1];
+			final int result = expand(pattern, out);
+			built.put(pattern, new int[] { out, result });
+			return result;
+		}
+
+		private int expand(SimplePattern pattern, int out) {
+			if (pattern instanceof SingleCharPattern)
+				return add(CHAR, ((SingleCharPattern) pattern).getChar(), null, out);
+
+			if (pattern instanceof CharSetPattern && ((CharSetPattern) pattern).isSingleChar())
+				return add(SET, '\0', pattern, out);
+
+			if (pattern instanceof RepetitionPattern)
+				return repetition((RepetitionPattern) pattern, out);
+
+			if (pattern instanceof GroupPattern) {
+				final GroupPattern group = (GroupPattern) pattern;
+				final int id = group.getGroupId();
+				if (id == -1)
+					return trie(group.getGroup(), out, new IdentityHashMap<>(), null);
+				final int end = add(SAVE, '\0', 2 * id + 1, out);
+				return add(SAVE, '\0', 2 * id, trie(group.getGroup(), end, new IdentityHashMap<>(), null));
+			}
+
+			return add(OPAQUE, '\0', pattern, out);
+		}
+
+		// Unrolls the bounds: the mandatory copies, then either a loop or the
+		// optional copies, each of them able to skip to out
+		private int repetition(RepetitionPattern repetition, int out) {
+			final SimplePattern origin = repetition.getOrigin();
+			int entry;
+			int mandatory = repetition.getMin();
+			if (repetition.getMax() == RepetitionPattern.UNBOUNDED) {
+				final int loop = add(EPSILON, '\0', null, -1);
+				entry = pattern(origin, loop);
+				epsilons.set(loop, new int[] { entry, out });
+				mandatory--;
+			} else {
+				entry = out;
+				for (int i = repetition.getMin(); i < repetition.getMax(); i++)
+					entry = epsilon(new int[] { pattern(origin, entry), out });
+			}
+			for (int i = 0; i < mandatory; i++)
+				entry = pattern(origin, entry);
+			return entry;
+		}
+
+		private static int[] toArray(List<Integer> list) {
+			final int[] result = new int[list.size()];
+			for (int i = 0; i < result.length; i++)
+				result[i] = list.get(i);
+			return result;
+		}
+	}
+
+	public int stateCount() {
+		return stateCount;
+	}
+
+	public int groupCount() {
+		return groupNames.length;
+	}
+
+	/**
+	 * Returns the id of the named group, or -1 if no pattern defines it.
+	 */
+	public int getGroupId(String name) {
+		for (int i = 0; i < groupNames.length; i++)
+			if (groupNames[i].equals(name))
+				return i;
+		return -1;
+	}
+
+	public String getLongestMatchStartingIn(String s, int pos) {
+		return s.substring(pos, matchEnd(s, pos, null, null));
+	}
+
+	/**
+	 * Returns the length of the longest match starting at {@code pos}, or 0 when
+	 * no pattern matches.
+	 */
+	public int matchLength(CharSequence s, int pos) {
+		return matchEnd(s, pos, null, null) - pos;
+	}
+
+	/**
+	 * Fills {@code result} with the longest match starting at {@code pos} and
+	 * returns whether a pattern matched. When several patterns match the same
+	 * longest text, the one added first is reported.
+	 */
+	public boolean match(CharSequence s, int pos, MatchResult result) {
+		matchEnd(s, pos, result, null);
+		return result.matched();
+	}
+
+	/**
+	 * Same as {@link #matchLength(CharSequence, int)}, also filling
+	 * {@code captures} with the span of each named group of the match, as
+	 * {@link PatternTrie#matchLength(CharSequence, int, int[])} does.
+	 */
+	public int matchLength(CharSequence s, int pos, int[] captures) {
+		if (captures.length < 2 * groupCount())
+			throw new IllegalArgumentException("captures must hold " + 2 * groupCount() + " offsets");
+		Arrays.fill(captures, -1);
+		return matchEnd(s, pos, null, captures) - pos;
+	}
+
+	private int matchEnd(CharSequence s, int pos, MatchResult result, int[] captures) {
+		final int end = matchFrom(s, pos, pos, start, result, captures);
+		if (end != -1)
+			return end;
+		if (result != null)
+			result.clear(pos);
+		return pos;
+	}
+
+	int entry(PatternTrie node) {
+		return entries.get(node);
+	}
+
+	/**
+	 * Returns the state following only the non literal edges of a node, or -1 if
+	 * it has none.
+	 */
+	int nonLiteralEntry(PatternTrie node) {
+		final Integer result = nonLiteralEntries.get(node);
+		return result == null ? -1 : result;
+	}
+
+	/**
+	 * Continues a match that started at {@code begin} and has reached the state
+	 * {@code entry} at {@code pos}. Returns the end of the longest match found from
+	 * there, filling {@code result} and {@code captures} when they are not null,
+	 * or returns -1 and leaves them untouched when there is none.
+	 */
+	int matchFrom(CharSequence s, int begin, int pos, int entry, MatchResult result, int[] captures) {
+		final Run run = acquire(captures != null);
+		try {
+			return run.longest(s, begin, pos, entry, result, captures);
+		} finally {
+			spare.set(run);
+		}
+	}
+
+	/**
+	 * Reports to {@code handler} every match going through the state
+	 * {@code entry} at {@code pos}, for a match that started at {@code start}.
+	 * Chars are not read past {@code end}.
+	 */
+	void reportFrom(CharSequence s, int end, int entry, int start, int pos, MatchHandler handler) {
+		final Run run = acquire(false);
+		try {
+			run.report(s, end, entry, start, pos, handler);
+		} finally {
+			spare.set(run);
+		}
+	}
+
+	private Run acquire(boolean capturing) {
+		Run run = spare.getAndSet(null);
+		if (run == null)
+			run = new Run();
+		run.capturing = capturing && slotCount > 0;
+		return run;
+	}
+
+	// The set of active states, kept as a sparse set over the state ids, with the
+	// captures of each active state when capturing
+	private class Run {
+
+		private int[] current = new int[stateCount];
+		private int[] previous = new int[stateCount];
+		private int size;
+		private int previousSize;
+		private final int[] marks = new int[stateCount];
+		private int generation = 1;
+		private int[] stack = new int[Math.max(16, stateCount)];
+		private int top;
+
+		private boolean capturing;
+		private final int[] work = new int[slotCount];
+		private final int[] found = new int[slotCount];
+		private int[] rows = new int[stateCount * slotCount];
+		private int[] previousRows = new int[stateCount * slotCount];
+
+		private int[] pendingPos = new int[0];
+		private int[] pendingState = new int[0];
+		private int[] pendingRows = new int[0];
+		private int pendingSize;
+
+		int longest(CharSequence s, int begin, int pos, int entry, MatchResult result, int[] captures) {
+			restart();
+			add(entry, null, 0, pos);
+			int longest = -1;
+			int matched = -1;
+			while (true) {
+				addPending(pos);
+				final int best = bestMatch();
+				if (best != -1) {
+					longest = pos;
+					matched = next[current[best]];
+					if (capturing)
+						System.arraycopy(rows, best * slotCount, found, 0, slotCount);
+				}
+				if (pos >= s.length() || (size == 0 && pendingSize == 0))
+					break;
+				step(s, pos);
+				pos++;
+			}
+			if (longest != -1) {
+				if (result != null)
+					result.set(begin, longest, matched, sources[matched]);
+				if (capturing)
+					System.arraycopy(found, 0, captures, 0, slotCount);
+			}
+			return longest;
+		}
+
+		void report(CharSequence s, int end, int entry, int start, int pos, MatchHandler handler) {
+			restart();
+			add(entry, null, 0, pos);
+			while (true) {
+				addPending(pos);
+				for (int i = 0; i < size; i++)
+					if (kinds[current[i]] == MATCH && isFirstMatch(i))
+						handler.onMatch(start, pos, next[current[i]]);
+				if (pos >= end || (size == 0 && pendingSize == 0))
+					return;
+				step(s, pos);
+				pos++;
+			}
+		}
+
+		// Whether no active state before i ends the same pattern
+		private boolean isFirstMatch(int i) {
+			for (int j = 0; j < i; j++)
+				if (kinds[current[j]] == MATCH && next[current[j]] == next[current[i]])
+					return false;
+			return true;
+		}
+
+		private void restart() {
+			size = 0;
+			pendingSize = 0;
+			nextGeneration();
+		}
+
+		private void nextGeneration() {
+			if (++generation == Integer.MAX_VALUE) {
+				Arrays.fill(marks, 0);
+				generation = 1;
+			}
+		}
+
+		// Moves the states past the char at pos
+		private void step(CharSequence s, int pos) {
+			final char ch = s.charAt(pos);
+			int[] tmp = previous;
+			previous = current;
+			current = tmp;
+			tmp = previousRows;
+			previousRows = rows;
+			rows = tmp;
+			previousSize = size;
+			size = 0;
+			nextGeneration();
+			for (int i = 0; i < previousSize; i++) {
+				final int state = previous[i];
+				switch (kinds[state]) {
+				case CHAR:
+					if (chars[state] == ch)
+						add(next[state], previousRows, i * slotCount, pos + 1);
+					break;
+				case SET:
+					if (sets[state].contains(ch))
+						add(next[state], previousRows, i * slotCount, pos + 1);
+					break;
+				case OPAQUE:
+					final int len = opaques[state].matches(s, pos);
+					if (len == 1)
+						add(next[state], previousRows, i * slotCount, pos + 1);
+					else if (len > 1)
+						schedule(next[state], pos + len, i * slotCount);
+					break;
+				}
+			}
+		}
+
+		private void push(int value) {
+			if (top == stack.length)
+				stack = Arrays.copyOf(stack, 2 * top);
+			stack[top++] = value;
+		}
+
+		// Adds a state and everything reachable from it through epsilon edges, in
+		// order, with the captures of the row at offset in from (none when null)
+		void add(int state, int[] from, int offset, int pos) {
+			if (capturing)
+				if (from == null)
+					Arrays.fill(work, -1);
+				else
+					System.arraycopy(from, offset, work, 0, slotCount);
+			top = 0;
+			push(state);
+			while (top > 0) {
+				final int s = stack[--top];
+				if (s < 0) {
+					// Restores a capture once the states after a SAVE are added
+					work[-s - 1] = stack[--top];
+					continue;
+				}
+				if (marks[s] == generation)
+					continue;
+				marks[s] = generation;
+				switch (kinds[s]) {
+				case EPSILON:
+					final int[] targets = epsilons[s];
+					for (int i = targets.length - 1; i >= 0; i--)
+						if (marks[targets[i]] != generation)
+							push(targets[i]);
+					break;
+				case SAVE:
+					if (capturing) {
+						push(work[slots[s]]);
+						push(-slots[s] - 1);
+						work[slots[s]] = pos;
+					}
+					push(next[s]);
+					break;
+				default:
+					if (capturing)
+						System.arraycopy(work, 0, rows, size * slotCount, slotCount);
+					current[size++] = s;
+				}
+			}
+		}
+
+		void schedule(int state, int pos, int offset) {
+			if (pendingSize == pendingPos.length) {
+				pendingPos = Arrays.copyOf(pendingPos, Math.max(4, pendingSize * 2));
+				pendingState = Arrays.copyOf(pendingState, pendingPos.length);
+				pendingRows = Arrays.copyOf(pendingRows, pendingPos.length * slotCount);
+			}
+			pendingPos[pendingSize] = pos;
+			pendingState[pendingSize] = state;
+			if (capturing)
+				System.arraycopy(previousRows, offset, pendingRows, pendingSize * slotCount, slotCount);
+			pendingSize++;
+		}
+
+		void addPending(int pos) {
+			for (int i = 0; i < pendingSize; i++)
+				if (pendingPos[i] == pos) {
+					add(pendingState[i], pendingRows, i * slotCount, pos);
+					pendingSize--;
+					pendingPos[i] = pendingPos[pendingSize];
+					pendingState[i] = pendingState[pendingSize];
+					if (capturing)
+						System.arraycopy(pendingRows, pendingSize * slotCount, pendingRows, i * slotCount, slotCount);
+					i--;
+				}
+		}
+
+		// Index of the active MATCH state with the lowest pattern id, or -1
+		int bestMatch() {
+			int result = -1;
+			for (int i = 0; i < size; i++) {
+				final int s = current[i];
+				if (kinds[s] == MATCH && (result == -1 || next[s] < next[current[result]]))
+					result = i;
+			}
+			return result;
+		}
+	}
+
+}
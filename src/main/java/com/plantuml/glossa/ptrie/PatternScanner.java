@@ -0,0 +1,150 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Reports every match of a {@link PatternAutomaton} in a text in a single pass,
+ * Aho–Corasick style.
+ *
+ * Literal edges are followed with failure links, so each char of the text is
+ * read once whatever the number of patterns. When a state also has char set or
+ * variable-length edges, those are tried from the current position and the
+ * rest of the path is followed as in {@link PatternAutomaton#matchLength}.
+ */
+public final class PatternScanner {
+
+	private static final int NONE = -1;
+
+	private final PatternAutomaton automaton;
+
+	private final int[] depth;
+	private final int[] fail;
+	// Next state along the failure links ending a pattern, or NONE
+	private final int[] output;
+	// Next state along the failure links having non literal edges, or NONE
+	private final int[] fallback;
+	private final boolean rootFallback;
+	private final FirstChars firstChars;
+
+	PatternScanner(PatternAutomaton automaton) {
+		this.automaton = automaton;
+		final int count = automaton.stateCount();
+		this.depth = new int[count];
+		this.fail = new int[count];
+		this.output = new int[count];
+		this.fallback = new int[count];
+		Arrays.fill(fail, NONE);
+		Arrays.fill(output, NONE);
+		Arrays.fill(fallback, NONE);
+		this.rootFallback = automaton.hasNonLiteralEdges(0);
+		this.firstChars = automaton.firstChars();
+
+		// Breadth-first walk on literal edges only
+		final int[] queue = new int[count];
+		int head = 0;
+		int tail = 0;
+		fail[0] = 0;
+		queue[tail++] = 0;
+		while (head < tail) {
+			final int parent = queue[head++];
+			for (int i = 0; i < automaton.literalCount(parent); i++) {
+				final char ch = automaton.literalChar(parent, i);
+				final int child = automaton.literalTarget(parent, i);
+				if (fail[child] != NONE)
+					continue;
+
+				int link = 0;
+				if (parent != 0) {
+					int f = fail[parent];
+					while (f != 0 && automaton.literalNext(f, ch) == NONE)
+						f = fail[f];
+					final int next = automaton.literalNext(f, ch);
+					if (next != NONE)
+						link = next;
+				}
+				depth[child] = depth[parent] + 1;
+				fail[child] = link;
+				if (link != 0) {
+					output[child] = automaton.patternIdOf(link) != -1 ? link : output[link];
+					fallback[child] = automaton.hasNonLiteralEdges(link) ? link : fallback[link];
+				}
+				queue[tail++] = child;
+			}
+		}
+	}
+
+	/**
+	 * Reports to {@code handler} every match found in {@code s} between
+	 * {@code from} and {@code to} (exclusive). Matches are reported as they are
+	 * found, which is mostly in increasing order of their end.
+	 */
+	public void scan(CharSequence s, int from, int to, MatchHandler handler) {
+		// Variable-length edges must not see the chars after the range
+		if (to < s.length())
+			s = CharBuffer.wrap(s, 0, to);
+
+		int state = 0;
+		for (int pos = from; pos < to; pos++) {
+			// Nothing can start before the next first char
+			if (state == 0 && (pos = firstChars.next(s, pos, to)) == to)
+				break;
+			if (rootFallback)
+				automaton.followNonLiteral(s, to, 0, pos, pos, handler);
+
+			final char ch = s.charAt(pos);
+			int next;
+			while ((next = automaton.literalNext(state, ch)) == NONE && state != 0)
+				state = fail[state];
+			state = next == NONE ? 0 : next;
+			if (state == 0)
+				continue;
+
+			final int end = pos + 1;
+			for (int t = automaton.patternIdOf(state) != -1 ? state : output[state]; t != NONE; t = output[t])
+				handler.onMatch(end - depth[t], end, automaton.patternIdOf(t));
+
+			for (int f = automaton.hasNonLiteralEdges(state) ? state : fallback[state]; f != NONE; f = fallback[f])
+				automaton.followNonLiteral(s, to, f, end - depth[f], end, handler);
+		}
+	}
+
+	public void scan(CharSequence s, MatchHandler handler) {
+		scan(s, 0, s.length(), handler);
+	}
+
+}
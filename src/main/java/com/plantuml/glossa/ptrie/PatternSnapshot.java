@@ -0,0 +1,275 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link PatternAutomaton} read from its binary form, written by
+ * {@link PatternAutomaton#writeSnapshot}. Matching reads the tables straight
+ * from the buffer, so a memory-mapped file is ready to use without building any
+ * object, and is shared by every process mapping it.
+ *
+ * The format is big-endian: a header (magic, version, then the number of
+ * states, ASCII classes, ASCII rows, sparse edges, char sets and patterns), the
+ * 128 ASCII classes as bytes, then the flat int tables of the automaton in
+ * order: pattern ids, ASCII row starts, ASCII transitions, sparse starts, sparse chars (as chars),
+ * sparse targets, set starts, set targets, set offsets, set data, source
+ * offsets, and the sources as chars.
+ */
+public final class PatternSnapshot {
+
+	static final int MAGIC = 0x474C5041; // "GLPA"
+	static final int VERSION = 3;
+
+	private static final int NONE = -1;
+	private static final int ASCII = 128;
+	private static final int HEADER = 8 * 4;
+
+	private final ByteBuffer buffer;
+	private final int stateCount;
+	private final int classCount;
+	private final int sourceCount;
+
+	private final int asciiClass;
+	private final int patternIds;
+	private final int asciiRow;
+	private final int asciiNext;
+	private final int sparseStart;
+	private final int sparseChars;
+	private final int sparseNext;
+	private final int setStart;
+	private final int setNext;
+	private final int setOffsets;
+	private final int setData;
+	private final int sourceOffsets;
+	private final int sourceChars;
+
+	// Decoded on first use only
+	private final String[] sources;
+
+	private PatternSnapshot(ByteBuffer buffer) {
+		this.buffer = buffer;
+		if (buffer.remaining() < HEADER || buffer.getInt(0) != MAGIC)
+			throw new IllegalArgumentException("Not a pattern snapshot");
+		if (buffer.getInt(4) != VERSION)
+			throw new IllegalArgumentException("Unsupported snapshot version " + buffer.getInt(4));
+
+		this.stateCount = count(8);
+		this.classCount = count(12);
+		final int rowCount = count(16);
+		final int sparseCount = count(20);
+		final int setCount = count(24);
+		this.sourceCount = count(28);
+		if (stateCount == 0 || classCount == 0 || classCount > ASCII || rowCount == 0)
+			throw new IllegalArgumentException("Invalid snapshot header");
+
+		// Each table starts where the previous one ends, which must be in the buffer
+		this.asciiClass = HEADER;
+		this.patternIds = asciiClass + ASCII;
+		this.asciiRow = end(patternIds + 4L * stateCount);
+		this.asciiNext = end(asciiRow + 4L * stateCount);
+		this.sparseStart = end(asciiNext + 4L * rowCount * classCount);
+		this.sparseChars = end(sparseStart + 4 * (stateCount + 1L));
+		this.sparseNext = end(sparseChars + 2L * sparseCount);
+		this.setStart = end(sparseNext + 4L * sparseCount);
+		this.setNext = end(setStart + 4 * (stateCount + 1L));
+		this.setOffsets = end(setNext + 4L * setCount);
+		this.setData = end(setOffsets + 4 * (setCount + 1L));
+		this.sourceOffsets = end(setData + (long) count(setOffsets + 4 * setCount));
+		this.sourceChars = end(sourceOffsets + 4 * (sourceCount + 1L));
+		end(sourceChars + 2L * count(sourceOffsets + 4 * sourceCount));
+		this.sources = new String[sourceCount];
+	}
+
+	private int count(int offset) {
+		final int result = buffer.getInt(offset);
+		if (result < 0)
+			throw new IllegalArgumentException("Negative count in snapshot");
+		return result;
+	}
+
+	private int end(long offset) {
+		if (offset > buffer.limit())
+			throw new IllegalArgumentException("Truncated snapshot");
+		return (int) offset;
+	}
+
+	/**
+	 * Reads a snapshot from the remaining bytes of {@code buffer}, which are used
+	 * in place and must not be modified afterwards.
+	 */
+	public static PatternSnapshot load(ByteBuffer buffer) {
+		return new PatternSnapshot(buffer.slice().order(ByteOrder.BIG_ENDIAN));
+	}
+
+	/**
+	 * Maps a snapshot file in memory.
+	 */
+	public static PatternSnapshot map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	// Size of a set in the set data, in bytes
+	static int setSize(CharSetPattern set) {
+		return 8 + 8 + 4 + 4 * set.getRanges().length;
+	}
+
+	public int stateCount() {
+		return stateCount;
+	}
+
+	/**
+	 * Returns the name of the pattern with the given id.
+	 */
+	public String pattern(int patternId) {
+		if (patternId < 0 || patternId >= sourceCount)
+			throw new IndexOutOfBoundsException(String.valueOf(patternId));
+		synchronized (sources) {
+			if (sources[patternId] == null) {
+				final int start = buffer.getInt(sourceOffsets + 4 * patternId);
+				final int end = buffer.getInt(sourceOffsets + 4 * patternId + 4);
+				final char[] chars = new char[end - start];
+				for (int i = 0; i < chars.length; i++)
+					chars[i] = buffer.getChar(sourceChars + 2 * (start + i));
+				sources[patternId] = new String(chars);
+			}
+			return sources[patternId];
+		}
+	}
+
+	public String getLongestMatchStartingIn(String s, int pos) {
+		return s.substring(pos, matchEnd(s, pos, null));
+	}
+
+	/**
+	 * Returns the length of the longest match starting at {@code pos}, or 0 when
+	 * no pattern matches.
+	 */
+	public int matchLength(CharSequence s, int pos) {
+		return matchEnd(s, pos, null) - pos;
+	}
+
+	/**
+	 * Fills {@code result} with the longest match starting at {@code pos} and
+	 * returns whether a pattern matched.
+	 */
+	public boolean match(CharSequence s, int pos, MatchResult result) {
+		matchEnd(s, pos, result);
+		return result.matched();
+	}
+
+	private int matchEnd(CharSequence s, int pos, MatchResult result) {
+		final int start = pos;
+		int state = 0;
+		int longest = pos;
+		int matched = patternId(0);
+		while (pos < s.length()) {
+			final char ch = s.charAt(pos);
+			final int next = ch < ASCII
+					? buffer.getInt(asciiNext + 4 * (buffer.getInt(asciiRow + 4 * state) + buffer.get(asciiClass + ch)))
+					: nonAsciiNext(state, ch);
+			if (next == NONE)
+				break;
+
+			pos++;
+			state = next;
+			if (patternId(state) != -1) {
+				longest = pos;
+				matched = patternId(state);
+			}
+		}
+		if (result != null)
+			if (matched == -1)
+				result.clear(start);
+			else
+				result.set(start, longest, matched, pattern(matched));
+
+		return longest;
+	}
+
+	private int patternId(int state) {
+		return buffer.getInt(patternIds + 4 * state);
+	}
+
+	private int nonAsciiNext(int state, char ch) {
+		int low = buffer.getInt(sparseStart + 4 * state);
+		int high = buffer.getInt(sparseStart + 4 * state + 4) - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final char key = buffer.getChar(sparseChars + 2 * mid);
+			if (key < ch)
+				low = mid + 1;
+			else if (key > ch)
+				high = mid - 1;
+			else
+				return buffer.getInt(sparseNext + 4 * mid);
+		}
+
+		final int end = buffer.getInt(setStart + 4 * state + 4);
+		for (int i = buffer.getInt(setStart + 4 * state); i < end; i++)
+			if (setContains(setData + buffer.getInt(setOffsets + 4 * i), ch))
+				return buffer.getInt(setNext + 4 * i);
+
+		return NONE;
+	}
+
+	// Same layout as CharSetPattern: ASCII masks, then ranges. Only non ASCII
+	// chars are looked up here, the others having their own classes.
+	private boolean setContains(int offset, char ch) {
+		final int count = buffer.getInt(offset + 16) / 2;
+		final int ranges = offset + 20;
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (ch < buffer.getInt(ranges + 8 * mid))
+				high = mid - 1;
+			else if (ch > buffer.getInt(ranges + 8 * mid + 4))
+				low = mid + 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+}
@@ -34,160 +34,517 @@
  */
 package com.plantuml.glossa.ptrie;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
-import com.plantuml.glossa.StringPeeker;
+import com.plantuml.glossa.ptrie.BrackexNode.Alternative;
+import com.plantuml.glossa.ptrie.BrackexNode.CharClass;
+import com.plantuml.glossa.ptrie.BrackexNode.Group;
+import com.plantuml.glossa.ptrie.BrackexNode.Literal;
+import com.plantuml.glossa.ptrie.BrackexNode.Repeat;
+import com.plantuml.glossa.ptrie.BrackexNode.Sequence;
 
 // https://en.wikipedia.org/wiki/CJK_Symbols_and_Punctuation
 // Set:「abc」
 // Range:「a〜c」
 //One or more: 〸a
 //Named group: a〔group1〡〸b〕c
+// The full syntax is described in brackex.md, see BrackexParser
 
 // 〇	〈	〉	《	》	「	」	『	』
 // 【	】	〒	〓	〔	〕	〖	〗	〘	〙	〚	〛 
 // 〸	〹	〺
 public class PatternTrie {
 
-	private final Map<Character, PatternTrie> children = new HashMap<>();
-	private final Map<SimplePattern, PatternTrie> simplePatterns = new HashMap<>();
+	// Literal children are stored according to their number:
+	// - one child uses the two inline fields below
+	// - up to SORTED_MAX children use sorted arrays with binary search
+	// - above, keys/nodes become an open-addressed table (null node = free slot)
+	private static final int SORTED_MAX = 8;
 
-	static class Record {
-		final int length;
-		final PatternTrie trie;
+	// Alternatives and optional parts are expanded into branches of the trie,
+	// as long as copying the next item of a sequence to every branch costs less
+	// than this many states. Past that, the branches share a single edge for
+	// the rest of the sequence, which the NFA follows
+	private static final int MAX_BRANCHES = 64;
 
-		public Record(int length, PatternTrie trie) {
-			this.length = length;
-			this.trie = trie;
-		}
-	}
+	// Index of the pattern ending here in the root sources, or -1
+	private int patternId = -1;
+	private List<String> sources;
+	// Names of the capturing groups, indexed by group id (root only)
+	private List<String> groupNames;
+
+	private int size;
+	private char singleChar;
+	private PatternTrie singleChild;
+	private char[] keys;
+	private PatternTrie[] nodes;
+
+	private int patternCount;
+	private SimplePattern[] patterns;
+	private PatternTrie[] patternChildren;
+	// Whether an edge may match more than one char (repetition, group...)
+	private boolean variableEdges;
 
-//	@Override
-//	public String toString() {
-//		final StringBuilder sb = new StringBuilder("children=");
-//		for (char ch : children.keySet())
-//			if (ch == '\0')
-//				sb.append("<ZERO>");
-//			else
-//				sb.append(ch);
-//		sb.append(" patterns=");
-//		sb.append(simplePatterns.toString());
-//		return sb.toString();
-//	}
+	// Built when a match first needs it, dropped when a pattern is added
+	private volatile PatternNfa nfa;
 
 	public void addPattern(String s) {
 		if (s.indexOf('\0') != -1)
 			throw new IllegalArgumentException();
 
-		addInternal(this, new StringPeeker(s + "\0"));
+		addParsed(this, BrackexCache.getInstance().parse(s), s);
+		nfa = null;
 	}
 
-	private static void addInternal(PatternTrie current, StringPeeker input) {
-		if (input.length() == 0)
-			throw new UnsupportedOperationException();
-		if (input.endsWith("\0") == false)
-			throw new IllegalArgumentException();
+	// Adds to target, which is this trie or one of its nested groups
+	private void addParsed(PatternTrie target, BrackexNode node, String source) {
+		int id = -1;
+		for (PatternTrie end : add(Collections.singletonList(target), node)) {
+			if (end.patternId != -1)
+				continue;
+			if (id == -1) {
+				if (target.sources == null)
+					target.sources = new ArrayList<>();
+				id = target.sources.size();
+				target.sources.add(source);
+			}
+			end.patternId = id;
+		}
+	}
+
+	private List<PatternTrie> add(List<PatternTrie> from, BrackexNode node) {
+		final List<PatternTrie> result = new ArrayList<>();
+		for (PatternTrie current : from)
+			add(current, node, result);
+		return result;
+	}
 
-		while (input.length() > 0) {
-			final char added = input.charAt(0);
-
-			if (added == '〸') {
-				final char ch = input.charAt(1);
-				final SimplePattern pattern = new RepetitionPattern(new SingleCharPattern(ch));
-				final PatternTrie child = new PatternTrie();
-				current.simplePatterns.put(pattern, child);
-				input.jump(2);
-				current = child;
-			} else if (added == '〔') {
-				final int end = input.indexOf('〕');
-				if (end == -1)
-					throw new UnsupportedOperationException("wip99");
-				final String part = input.substring(0, end + 1);
-				final int idx = part.indexOf('〡');
-				if (idx == -1)
-					throw new UnsupportedOperationException("wip98");
-				final String part2 = part.substring(idx + 1, end);
-
-				final PatternTrie externalGroup = new PatternTrie();
-				externalGroup.addPattern(part2);
-
-				final PatternTrie child = new PatternTrie();
-				current.simplePatterns.put(new GroupPattern(externalGroup), child);
-				input.jump(end + 1);
-				current = child;
-
-			} else if (added == '「') {
-				final int end = input.indexOf('」');
-				if (end == -1)
-					throw new UnsupportedOperationException("wip80");
-				final PatternTrie child = new PatternTrie();
-				current.simplePatterns.put(CharSetPattern.build(input.substring(0, end + 1)), child);
-				input.jump(end + 1);
-				current = child;
-			} else {
-				final PatternTrie child = current.getOrCreate(added);
-				input.jump(1);
-
-				current = child;
+	// Links every branch to a single node, through one edge matching rest
+	private List<PatternTrie> join(List<PatternTrie> from, BrackexNode rest) {
+		final SimplePattern pattern = rest instanceof Literal ? new GroupPattern(nested(rest)) : toPattern(rest);
+		final PatternTrie joined = new PatternTrie();
+		final List<PatternTrie> result = new ArrayList<>();
+		for (PatternTrie current : from) {
+			current.addSimplePattern(pattern, joined);
+			if (rest.isNullable())
+				addEnd(result, current);
+		}
+		addEnd(result, joined);
+		return result;
+	}
+
+	private static BrackexNode rest(List<BrackexNode> items, int from) {
+		if (from == items.size() - 1)
+			return items.get(from);
+		final StringBuilder source = new StringBuilder();
+		for (BrackexNode item : items.subList(from, items.size()))
+			source.append(item.getSource());
+		return new Sequence(source.toString(), new ArrayList<>(items.subList(from, items.size())));
+	}
+
+	private void add(PatternTrie current, BrackexNode node, List<PatternTrie> ends) {
+		if (node instanceof Literal) {
+			addEnd(ends, current.getOrCreate(((Literal) node).ch));
+		} else if (node instanceof CharClass) {
+			addEnd(ends, current.addSimplePattern(((CharClass) node).set));
+		} else if (node instanceof Sequence) {
+			final List<BrackexNode> items = ((Sequence) node).items;
+			List<PatternTrie> tmp = Collections.singletonList(current);
+			for (int i = 0; i < items.size(); i++) {
+				if (tmp.size() > 1 && (long) tmp.size() * items.get(i).stateCount() > MAX_BRANCHES) {
+					tmp = join(tmp, rest(items, i));
+					break;
+				}
+				tmp = add(tmp, items.get(i));
 			}
+			for (PatternTrie end : tmp)
+				addEnd(ends, end);
+		} else if (node instanceof Alternative) {
+			for (BrackexNode choice : ((Alternative) node).choices)
+				add(current, choice, ends);
+		} else if (node instanceof Group) {
+			final Group group = (Group) node;
+			if (group.isNullable())
+				addEnd(ends, current);
+			addEnd(ends, current.addSimplePattern(toPattern(group)));
+		} else {
+			final Repeat repeat = (Repeat) node;
+			if (repeat.isNullable())
+				addEnd(ends, current);
+			if (repeat.max == 1)
+				add(current, repeat.item, ends);
+			else if (repeat.max != 0)
+				addEnd(ends, current.addSimplePattern(
+						new RepetitionPattern(toPattern(repeat.item), Math.max(1, repeat.min), repeat.max)));
 		}
 	}
 
-	private PatternTrie getOrCreate(Character added) {
-		PatternTrie result = children.get(added);
+	private static void addEnd(List<PatternTrie> ends, PatternTrie end) {
+		for (PatternTrie already : ends)
+			if (already == end)
+				return;
+		ends.add(end);
+	}
+
+	private SimplePattern toPattern(BrackexNode node) {
+		if (node instanceof Literal)
+			return new SingleCharPattern(((Literal) node).ch);
+		if (node instanceof CharClass)
+			return ((CharClass) node).set;
+		if (node instanceof Group)
+			return new GroupPattern(((Group) node).name, groupId(((Group) node).name), nested(((Group) node).item));
+		return new GroupPattern(nested(node));
+	}
+
+	private PatternTrie nested(BrackexNode node) {
+		if (node.hasNamedGroup())
+			return build(node);
+		return BrackexCache.getInstance().nested(node, this::build);
+	}
+
+	private PatternTrie build(BrackexNode node) {
+		final PatternTrie result = new PatternTrie();
+		addParsed(result, node, node.getSource());
+		return result;
+	}
+
+	// Named groups are numbered once, when they are first seen
+	private int groupId(String name) {
+		if (name == null)
+			return -1;
+		if (groupNames == null)
+			groupNames = new ArrayList<>();
+		final int id = groupNames.indexOf(name);
+		if (id != -1)
+			return id;
+		groupNames.add(name);
+		return groupNames.size() - 1;
+	}
+
+	/**
+	 * Returns the number of named groups, which are numbered from 0 in the order
+	 * they first appear in the patterns.
+	 */
+	public int groupCount() {
+		return groupNames == null ? 0 : groupNames.size();
+	}
+
+	/**
+	 * Returns the id of the named group, or -1 if no pattern defines it. Two groups
+	 * with the same name share the same id.
+	 */
+	public int getGroupId(String name) {
+		return groupNames == null ? -1 : groupNames.indexOf(name);
+	}
+
+	List<String> getGroupNames() {
+		return groupNames;
+	}
+
+	private PatternTrie addSimplePattern(SimplePattern pattern) {
+		return addSimplePattern(pattern, new PatternTrie());
+	}
+
+	private PatternTrie addSimplePattern(SimplePattern pattern, PatternTrie child) {
+		if (patterns == null) {
+			patterns = new SimplePattern[1];
+			patternChildren = new PatternTrie[1];
+		} else if (patternCount == patterns.length) {
+			patterns = Arrays.copyOf(patterns, patternCount * 2);
+			patternChildren = Arrays.copyOf(patternChildren, patternCount * 2);
+		}
+		if (isSingleChar(pattern) == false)
+			variableEdges = true;
+		patterns[patternCount] = pattern;
+		patternChildren[patternCount] = child;
+		patternCount++;
+		return child;
+	}
+
+	/**
+	 * Whether every match of {@code pattern} is exactly one char long, so that
+	 * {@link #accepts(SimplePattern, char)} tells if it matches.
+	 */
+	static boolean isSingleChar(SimplePattern pattern) {
+		return pattern instanceof SingleCharPattern
+				|| (pattern instanceof CharSetPattern && ((CharSetPattern) pattern).isSingleChar());
+	}
+
+	static boolean accepts(SimplePattern pattern, char ch) {
+		if (pattern instanceof SingleCharPattern)
+			return ((SingleCharPattern) pattern).getChar() == ch;
+		return ((CharSetPattern) pattern).contains(ch);
+	}
+
+	private PatternTrie getOrCreate(char added) {
+		PatternTrie result = getChild(added);
 		if (result == null) {
 			result = new PatternTrie();
-			children.put(added, result);
+			putChild(added, result);
 		}
 		return result;
 	}
 
+	PatternTrie getChild(char ch) {
+		if (size == 0)
+			return null;
+
+		if (size == 1)
+			return singleChar == ch ? singleChild : null;
+
+		if (size <= SORTED_MAX) {
+			final int idx = Arrays.binarySearch(keys, 0, size, ch);
+			return idx >= 0 ? nodes[idx] : null;
+		}
+
+		final int mask = keys.length - 1;
+		for (int i = hash(ch) & mask;; i = (i + 1) & mask) {
+			final PatternTrie node = nodes[i];
+			if (node == null || keys[i] == ch)
+				return node;
+		}
+	}
+
+	private void putChild(char ch, PatternTrie child) {
+		if (size == 0) {
+			singleChar = ch;
+			singleChild = child;
+		} else if (size == 1) {
+			keys = new char[2];
+			nodes = new PatternTrie[2];
+			final boolean before = ch < singleChar;
+			keys[before ? 0 : 1] = ch;
+			nodes[before ? 0 : 1] = child;
+			keys[before ? 1 : 0] = singleChar;
+			nodes[before ? 1 : 0] = singleChild;
+			singleChild = null;
+		} else if (size < SORTED_MAX) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, Math.min(size * 2, SORTED_MAX));
+				nodes = Arrays.copyOf(nodes, keys.length);
+			}
+			final int idx = -Arrays.binarySearch(keys, 0, size, ch) - 1;
+			System.arraycopy(keys, idx, keys, idx + 1, size - idx);
+			System.arraycopy(nodes, idx, nodes, idx + 1, size - idx);
+			keys[idx] = ch;
+			nodes[idx] = child;
+		} else {
+			if (size == SORTED_MAX || (size + 1) * 2 > keys.length)
+				rehash(size == SORTED_MAX ? 4 * SORTED_MAX : keys.length * 2);
+			insertHashed(keys, nodes, ch, child);
+		}
+		size++;
+	}
+
+	private void rehash(int capacity) {
+		final char[] oldKeys = keys;
+		final PatternTrie[] oldNodes = nodes;
+		keys = new char[capacity];
+		nodes = new PatternTrie[capacity];
+		for (int i = 0; i < oldNodes.length; i++)
+			if (oldNodes[i] != null)
+				insertHashed(keys, nodes, oldKeys[i], oldNodes[i]);
+	}
+
+	private static void insertHashed(char[] keys, PatternTrie[] nodes, char ch, PatternTrie child) {
+		final int mask = keys.length - 1;
+		int i = hash(ch) & mask;
+		while (nodes[i] != null)
+			i = (i + 1) & mask;
+		keys[i] = ch;
+		nodes[i] = child;
+	}
+
+	private static int hash(char ch) {
+		return (ch * 0x9E3779B9) >>> 16;
+	}
+
+	boolean isTerminal() {
+		return patternId != -1;
+	}
+
+	int getPatternId() {
+		return patternId;
+	}
+
+	List<String> getSources() {
+		return sources;
+	}
+
+	/**
+	 * Returns the chars of the literal children, sorted.
+	 */
+	char[] getChildChars() {
+		if (size == 0)
+			return new char[0];
+		if (size == 1)
+			return new char[] { singleChar };
+		if (size <= SORTED_MAX)
+			return Arrays.copyOf(keys, size);
+
+		final char[] result = new char[size];
+		int nb = 0;
+		for (int i = 0; i < nodes.length; i++)
+			if (nodes[i] != null)
+				result[nb++] = keys[i];
+		Arrays.sort(result);
+		return result;
+	}
+
+	int getPatternCount() {
+		return patternCount;
+	}
+
+	SimplePattern getPattern(int i) {
+		return patterns[i];
+	}
+
+	PatternTrie getPatternChild(int i) {
+		return patternChildren[i];
+	}
+
+	/**
+	 * Returns the chars a match can start with, for the patterns added so far.
+	 */
+	public FirstChars firstChars() {
+		return FirstChars.of(this);
+	}
+
+	/**
+	 * Freezes the current content of this trie into a table-driven automaton. Later
+	 * calls to {@link #addPattern(String)} are not reflected in the result.
+	 */
+	public PatternAutomaton compile() {
+		return new PatternAutomaton(this);
+	}
+
+	/**
+	 * Builds a matcher that follows every edge of this trie at once, see
+	 * {@link PatternNfa}. Later calls to {@link #addPattern(String)} are not
+	 * reflected in the result.
+	 */
+	public PatternNfa compileNfa() {
+		return nfa();
+	}
+
+	private PatternNfa nfa() {
+		PatternNfa result = nfa;
+		if (result == null)
+			nfa = result = new PatternNfa(this);
+		return result;
+	}
+
+	// The node reached by the only edge accepting ch, null if no edge accepts it,
+	// or this node if several edges may accept it, or an edge may match several
+	// chars, so that the walk must go on in the NFA
+	private PatternTrie next(char ch) {
+		if (variableEdges)
+			return this;
+		PatternTrie result = getChild(ch);
+		for (int i = 0; i < patternCount; i++)
+			if (accepts(patterns[i], ch)) {
+				if (result != null)
+					return this;
+				result = patternChildren[i];
+			}
+		return result;
+	}
+
 	public String getLongestMatchStartingIn(String s, int pos) {
-		return getLongestMatchStartingIn(this, s, pos);
+		return s.substring(pos, matchEnd(s, pos, null, null));
 	}
 
-	private Record getCandidate(int pos, String s) {
-		final PatternTrie child = children.get(s.charAt(pos));
-		if (child != null)
-			return new Record(1, child);
+	/**
+	 * Returns the length of the longest match starting at {@code pos}, or 0 when
+	 * no pattern matches. Any CharSequence can be matched in place, such as a
+	 * StringBuilder or a CharBuffer (offsets are then relative to its position).
+	 */
+	public int matchLength(CharSequence s, int pos) {
+		return matchEnd(s, pos, null, null) - pos;
+	}
 
-		for (Map.Entry<SimplePattern, PatternTrie> ent : simplePatterns.entrySet()) {
-			final int matches = ent.getKey().matches(s, pos);
-			if (matches > 0)
-				return new Record(matches, ent.getValue());
+	/**
+	 * Fills {@code result} with the longest match starting at {@code pos} and
+	 * returns whether a pattern matched.
+	 */
+	public boolean match(CharSequence s, int pos, MatchResult result) {
+		matchEnd(s, pos, result, null);
+		return result.matched();
+	}
 
+	/**
+	 * Same as {@link #matchLength(CharSequence, int)} on the chars of {@code s}
+	 * between {@code pos} and {@code end} (exclusive).
+	 */
+	public int matchLength(char[] s, int pos, int end) {
+		final CharArrayView view = CharArrayView.of(s, end);
+		try {
+			return matchEnd(view, pos, null, null) - pos;
+		} finally {
+			view.release();
 		}
-		return null;
 	}
 
-	private static String getLongestMatchStartingIn(PatternTrie current, String s, int pos) {
-		String longestMatch = "";
-		final StringBuilder result = new StringBuilder();
-		while (current != null) {
-			if (s.length() == pos)
-				if (current.children.containsKey('\0'))
-					return result.toString();
-				else
-					return longestMatch;
-
-			final Record candidate = current.getCandidate(pos, s);
+	public boolean match(char[] s, int pos, int end, MatchResult result) {
+		final CharArrayView view = CharArrayView.of(s, end);
+		try {
+			matchEnd(view, pos, result, null);
+		} finally {
+			view.release();
+		}
+		return result.matched();
+	}
 
-			if (candidate == null/* || child.children.size() == 0 */)
-				if (current.children.containsKey('\0'))
-					return result.toString();
-				else
-					return longestMatch;
+	/**
+	 * Same as {@link #matchLength(CharSequence, int)}, also filling
+	 * {@code captures} with the span of each named group of the match: group
+	 * {@code id} starts at {@code captures[2 * id]} and ends at
+	 * {@code captures[2 * id + 1]}, both -1 when the group did not take part. Use
+	 * {@link #getGroupId(String)} once to get the ids.
+	 */
+	public int matchLength(CharSequence s, int pos, int[] captures) {
+		if (captures.length < 2 * groupCount())
+			throw new IllegalArgumentException("captures must hold " + 2 * groupCount() + " offsets");
+		Arrays.fill(captures, -1);
+		return matchEnd(s, pos, null, captures) - pos;
+	}
 
-			for (int i = 0; i < candidate.length; i++)
-				result.append(s.charAt(pos++));
+	// Walks the trie while each char has a single edge to take, then hands the
+	// match over to the NFA
+	private int matchEnd(CharSequence s, int pos, MatchResult result, int[] captures) {
+		final int start = pos;
+		int longest = pos;
+		PatternTrie matched = isTerminal() ? this : null;
+		PatternTrie current = this;
+		while (pos < s.length()) {
+			final PatternTrie next = current.next(s.charAt(pos));
+			if (next == current) {
+				final PatternNfa nfa = nfa();
+				final int end = nfa.matchFrom(s, start, pos, nfa.entry(current), result, captures);
+				if (end != -1)
+					return end;
+				break;
+			}
+			if (next == null)
+				break;
 
-			if (candidate.trie.children.containsKey('\0'))
-				longestMatch = result.toString();
-			current = candidate.trie;
+			pos++;
+			current = next;
+			if (current.isTerminal()) {
+				longest = pos;
+				matched = current;
+			}
 		}
-		return longestMatch;
+		if (result != null)
+			if (matched == null)
+				result.clear(start);
+			else
+				result.set(start, longest, matched.patternId, sources.get(matched.patternId));
 
+		return longest;
 	}
 
 }
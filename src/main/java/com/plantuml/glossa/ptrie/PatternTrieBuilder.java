@@ -0,0 +1,62 @@
+/* ========================================================================
+ * PlantUML : a free UML diagram generator
+ * ========================================================================
+ *
+ * (C) Copyright 2009-2024, Arnaud Roques
+ *
+ * Project Info:  https://plantuml.com
+ * 
+ * If you like this project or if you find it useful, you can support us at:
+ * 
+ * https://plantuml.com/patreon (only 1$ per month!)
+ * https://plantuml.com/paypal
+ * 
+ * This file is part of PlantUML.
+ *
+ * PlantUML is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PlantUML distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ *
+ * Original Author:  Arnaud Roques
+ *
+ */
+package com.plantuml.glossa.ptrie;
+
+/**
+ * Collects brackex patterns, then builds an immutable {@link PatternAutomaton}.
+ *
+ * The builder itself is not thread-safe, but what it builds is safe for
+ * concurrent use: a built automaton, and the scanner created from it, can be
+ * stored in a static field and used by any number of threads without locking.
+ * Matching only reuses pooled objects (a spare NFA run, a view over char[]
+ * input), each of them handed to one thread at a time.
+ */
+public final class PatternTrieBuilder {
+
+	private final PatternTrie trie = new PatternTrie();
+
+	/**
+	 * Adds a pattern. Its id is the number of patterns added before it.
+	 */
+	public PatternTrieBuilder add(String pattern) {
+		trie.addPattern(pattern);
+		return this;
+	}
+
+	public PatternAutomaton build() {
+		return trie.compile();
+	}
+
+}
@@ -36,21 +36,48 @@ package com.plantuml.glossa.ptrie;
 
 public class RepetitionPattern implements SimplePattern {
 
+	public static final int UNBOUNDED = -1;
+
 	private final SimplePattern origin;
+	private final int min;
+	private final int max;
 
 	public RepetitionPattern(SimplePattern origin) {
+		this(origin, 1, UNBOUNDED);
+	}
+
+	public RepetitionPattern(SimplePattern origin, int min, int max) {
+		if (min < 1 || (max != UNBOUNDED && max < min))
+			throw new IllegalArgumentException("Invalid bounds " + min + " " + max);
 		this.origin = origin;
+		this.min = min;
+		this.max = max;
+	}
+
+	SimplePattern getOrigin() {
+		return origin;
+	}
+
+	int getMin() {
+		return min;
+	}
+
+	int getMax() {
+		return max;
 	}
 
-	public int matches(String s, int pos) {
+	public int matches(CharSequence s, int pos) {
 		int result = 0;
-		while (true) {
+		int count = 0;
+		while (max == UNBOUNDED || count < max) {
 			final int len = origin.matches(s, pos);
 			if (len == 0)
-				return result;
+				break;
 			result += len;
 			pos += len;
+			count++;
 		}
+		return count >= min ? result : 0;
 
 	}
 
@@ -36,6 +36,19 @@ package com.plantuml.glossa.ptrie;
 
 public interface SimplePattern {
 
-	public int matches(String s, int pos);
+	public int matches(CharSequence s, int pos);
+
+	/**
+	 * Same as {@link #matches(CharSequence, int)} on the chars of {@code s}
+	 * between {@code pos} and {@code end} (exclusive).
+	 */
+	public default int matches(char[] s, int pos, int end) {
+		final CharArrayView view = CharArrayView.of(s, end);
+		try {
+			return matches(view, pos);
+		} finally {
+			view.release();
+		}
+	}
 
 }
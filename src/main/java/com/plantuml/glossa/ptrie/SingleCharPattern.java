@@ -42,7 +42,11 @@ public class SingleCharPattern implements SimplePattern {
 		this.ch = ch;
 	}
 
-	public int matches(String s, int pos) {
+	char getChar() {
+		return ch;
+	}
+
+	public int matches(CharSequence s, int pos) {
 		if (s.length() == pos)
 			return 0;
 		if (s.charAt(pos) == ch)
@@ -51,4 +55,10 @@ public class SingleCharPattern implements SimplePattern {
 
 	}
 
+	public int matches(char[] s, int pos, int end) {
+		if (pos < end && s[pos] == ch)
+			return 1;
+		return 0;
+	}
+
 }
@@ -0,0 +1,178 @@
+package com.plantuml.glossa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.plantuml.glossa.markdown.ParserMarkdown;
+
+class GlossaBatchServiceTest {
+
+	@Test
+	void testManyDocuments() throws Exception {
+		final List<List<String>> documents = new ArrayList<>();
+		for (int i = 0; i < 2000; i++)
+			documents.add(Arrays.asList("doc " + i + " **bold**", "", "`code " + i + "` and *it*"));
+
+		final List<CompletableFuture<List<GlossaTag>>> results = new ArrayList<>();
+		try (GlossaBatchService service = new GlossaBatchService(ParserMarkdown::new, 16)) {
+			for (List<String> document : documents)
+				results.add(service.submit(document));
+			for (int i = 0; i < documents.size(); i++)
+				assertEquals(new ParserMarkdown().parse(PeekerUtils.peeker(documents.get(i))).toString(),
+						results.get(i).get(10, TimeUnit.SECONDS).toString());
+		}
+	}
+
+	@Test
+	void testRejectAndCancel() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Parser blocking = (wiki, handler) -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			wiki.jump();
+			return wiki.peek(0) != null;
+		};
+
+		try (GlossaBatchService service = new GlossaBatchService(() -> blocking, 1)) {
+			final CompletableFuture<List<GlossaTag>> first = service.trySubmit(Arrays.asList("a", "b", "c"));
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			assertEquals(1, service.inFlight());
+			assertThrows(RejectedExecutionException.class, () -> service.trySubmit(Arrays.asList("d")));
+
+			first.cancel(false);
+			release.countDown();
+			assertTrue(first.isCancelled());
+
+			final CompletableFuture<List<GlossaTag>> second = service.submit(Arrays.asList("e"));
+			assertEquals("[]", second.get(10, TimeUnit.SECONDS).toString());
+		}
+	}
+
+	@Test
+	void testError() throws Exception {
+		final AtomicInteger created = new AtomicInteger();
+		final Parser failing = (wiki, handler) -> {
+			if ("boom".equals(wiki.peek(0)))
+				throw new StackOverflowError();
+			wiki.jump();
+			return wiki.peek(0) != null;
+		};
+
+		try (GlossaBatchService service = new GlossaBatchService(() -> {
+			created.incrementAndGet();
+			return failing;
+		}, 1)) {
+			service.submit(Arrays.asList("ok")).get(10, TimeUnit.SECONDS);
+			assertEquals(1, created.get());
+
+			final CompletableFuture<List<GlossaTag>> failed = service.submit(Arrays.asList("boom"));
+			final ExecutionException e = assertThrows(ExecutionException.class,
+					() -> failed.get(10, TimeUnit.SECONDS));
+			assertInstanceOf(StackOverflowError.class, e.getCause());
+
+			// The parser that failed is not reused
+			service.submit(Arrays.asList("ok")).get(10, TimeUnit.SECONDS);
+			assertEquals(2, created.get());
+			assertEquals(0, service.inFlight());
+		}
+	}
+
+	// Documents whose parsing waits, for example on I/O, overlap up to
+	// maxInFlight: this does not depend on the number of cores
+	@Test
+	void testInFlightOverlap() throws Exception {
+		final Parser waiting = (wiki, handler) -> {
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			wiki.jump();
+			return wiki.peek(0) != null;
+		};
+		final long one = time(waiting, 1);
+		final long many = time(waiting, 16);
+		assertTrue(many * 4 < one, "1 in flight: " + one + " ms, 16 in flight: " + many + " ms");
+	}
+
+	private static long time(Parser parser, int maxInFlight) throws Exception {
+		final List<CompletableFuture<List<GlossaTag>>> results = new ArrayList<>();
+		try (GlossaBatchService service = new GlossaBatchService(() -> parser, maxInFlight)) {
+			final long start = System.nanoTime();
+			for (int i = 0; i < 64; i++)
+				results.add(service.submit(Arrays.asList("a", "b")));
+			for (CompletableFuture<List<GlossaTag>> result : results)
+				result.get(10, TimeUnit.SECONDS);
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		}
+	}
+
+	// Documents whose parsing only uses the CPU scale up to the number of cores,
+	// and do not slow down past it
+	@Test
+	void testCpuBoundScaling() throws Exception {
+		final List<String> lines = new ArrayList<>();
+		for (int i = 0; i < 200; i++)
+			lines.add("line " + i + " with **bold**, *italic* and `code " + i + "` text");
+		final String expected = new ParserMarkdown().parse(PeekerUtils.peeker(lines)).toString();
+
+		final int cores = Runtime.getRuntime().availableProcessors();
+		final List<Integer> levels = new ArrayList<>();
+		for (int level = 1; level < 2 * cores; level *= 2)
+			levels.add(level);
+		levels.add(2 * cores);
+
+		// Warms up the parser before measuring
+		throughput(lines, expected, cores);
+		final StringBuilder report = new StringBuilder();
+		final double[] throughputs = new double[levels.size()];
+		for (int i = 0; i < levels.size(); i++) {
+			throughputs[i] = throughput(lines, expected, levels.get(i));
+			report.append(levels.get(i)).append(" in flight: ").append((int) throughputs[i]).append(" documents/s\n");
+		}
+
+		final double best = Arrays.stream(throughputs).max().getAsDouble();
+		assertTrue(throughputs[throughputs.length - 1] * 2 > best, report.toString());
+		if (cores >= 4)
+			assertTrue(throughputs[levels.indexOf(4)] > 1.5 * throughputs[0], report.toString());
+	}
+
+	// Documents parsed per second, checking each result
+	private static double throughput(List<String> lines, String expected, int maxInFlight) throws Exception {
+		final int documents = 400;
+		final List<CompletableFuture<List<GlossaTag>>> results = new ArrayList<>();
+		try (GlossaBatchService service = new GlossaBatchService(ParserMarkdown::new, maxInFlight)) {
+			final long start = System.nanoTime();
+			for (int i = 0; i < documents; i++)
+				results.add(service.submit(lines));
+			for (CompletableFuture<List<GlossaTag>> result : results)
+				assertEquals(expected, result.get(30, TimeUnit.SECONDS).toString());
+			return documents * 1e9 / (System.nanoTime() - start);
+		}
+	}
+
+	@Test
+	void testInvalidLimit() {
+		assertThrows(IllegalArgumentException.class, () -> new GlossaBatchService(ParserMarkdown::new, 0));
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.plantuml.glossa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.plantuml.glossa.markdown.ParserMarkdown;
+
+class GlossaDocumentTest {
+
+	private static String parse(List<String> lines) {
+		return new ParserMarkdown().parse(PeekerUtils.peeker(lines)).toString();
+	}
+
+	@Test
+	void testEdits() {
+		final List<String> lines = new ArrayList<>(Arrays.asList("hello**world**", "ok *italic*", "", "`code`"));
+		final GlossaDocument document = new GlossaDocument(new ParserMarkdown(), lines);
+		assertEquals(parse(lines), document.getTags().toString());
+
+		lines.set(1, "ok *italic* and **bold**");
+		document.setLine(1, lines.get(1));
+		assertEquals(parse(lines), document.getTags().toString());
+		assertEquals("[《text〡code〡content〓code》]", document.getLineTags(3).toString());
+
+		final List<String> inserted = Arrays.asList("new *line*", "another");
+		lines.addAll(2, inserted);
+		document.replaceLines(2, 2, inserted);
+		assertEquals(parse(lines), document.getTags().toString());
+
+		lines.subList(0, 3).clear();
+		document.replaceLines(0, 3, Collections.emptyList());
+		assertEquals(parse(lines), document.getTags().toString());
+		assertEquals(3, document.lineCount());
+
+		document.replaceLines(0, 3, Collections.emptyList());
+		assertEquals("[]", document.getTags().toString());
+	}
+
+	@Test
+	void testTagsAreNotRebuilt() {
+		final List<String> lines = new ArrayList<>(Arrays.asList("first *line*", "second", "third **line**"));
+		final GlossaDocument document = new GlossaDocument(new ParserMarkdown(), lines);
+		final GlossaTag br = document.getTags().get(2);
+		assertEquals("br", br.getName());
+		assertSame(br, document.getTags().get(2));
+		final GlossaTag third = document.getLineTags(2).get(0);
+
+		lines.set(1, "second *edited*");
+		document.setLine(1, lines.get(1));
+		assertEquals(parse(lines), document.getTags().toString());
+		// The tags of the untouched lines are kept, not parsed or copied again
+		assertSame(br, document.getTags().get(2));
+		assertSame(third, document.getTags().get(document.getTags().size() - 2));
+	}
+
+	@Test
+	void testRandomEdits() {
+		final String[] samples = { "plain", "**bold**", "*a* and *b*", "", "`code`", "x **y** z" };
+		final Random random = new Random(42);
+		final List<String> lines = new ArrayList<>();
+		final GlossaDocument document = new GlossaDocument(new ParserMarkdown(), lines);
+		for (int edit = 0; edit < 500; edit++) {
+			final int from = random.nextInt(lines.size() + 1);
+			final int to = from + random.nextInt(Math.min(3, lines.size() - from) + 1);
+			final List<String> newLines = new ArrayList<>();
+			for (int i = random.nextInt(4); i > 0; i--)
+				newLines.add(samples[random.nextInt(samples.length)]);
+			lines.subList(from, to).clear();
+			lines.addAll(from, newLines);
+			document.replaceLines(from, to, newLines);
+
+			assertEquals(lines.size(), document.lineCount());
+			final String expected = parse(lines);
+			assertEquals(expected, document.getTags().toString());
+			// Through get() rather than the iterator
+			final List<GlossaTag> tags = document.getTags();
+			assertEquals(expected, new ArrayList<>(tags.subList(0, tags.size())).toString());
+		}
+	}
+
+	/**
+	 * Tests that editing one line does not cost a pass over the whole document.
+	 */
+	@Test
+	void testEditsOnLargeDocument() {
+		final List<String> lines = Collections.nCopies(300_000, "a *b*");
+		final GlossaDocument document = new GlossaDocument(new ParserMarkdown(), lines);
+		final int size = document.getTags().size();
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+			for (int i = 0; i < 50_000; i++) {
+				final int line = lines.size() / 2 + i % 100;
+				document.setLine(line, "c");
+				assertEquals("[《text〡content〓c》]", document.getLineTags(line).toString());
+				document.setLine(line, "a *b*");
+			}
+		});
+		assertEquals(size, document.getTags().size());
+		assertEquals(document.getLineTags(7).get(0), document.getTags().get(7 * (size + 1) / lines.size()));
+	}
+
+}
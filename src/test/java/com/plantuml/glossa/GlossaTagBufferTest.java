@@ -0,0 +1,98 @@
+package com.plantuml.glossa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.plantuml.glossa.markdown.ParserMarkdown;
+import com.sun.management.ThreadMXBean;
+
+class GlossaTagBufferTest {
+
+	@Test
+	void testSameAsCollector() {
+		final List<String> lines = Arrays.asList("some **bold** and *italic*", "", "`code` here");
+		final String expected = new ParserMarkdown().parse(PeekerUtils.peeker(lines)).toString();
+
+		final GlossaTagBuffer buffer = new GlossaTagBuffer();
+		final ParserMarkdown parser = new ParserMarkdown();
+		for (int i = 0; i < 3; i++) {
+			buffer.reset();
+			parser.parse(PeekerUtils.peeker(lines), buffer);
+			assertEquals(expected, buffer.asList().toString());
+		}
+
+		assertEquals(GlossaTagBuffer.TEXT, buffer.getKind(1));
+		assertEquals(GlossaStyle.BOLD, buffer.getStyles(1));
+		assertSame(lines.get(0), buffer.getContentSource(1));
+		assertEquals(7, buffer.getContentStart(1));
+		assertEquals(11, buffer.getContentEnd(1));
+	}
+
+	@Test
+	void testElementsAndCopies() {
+		final GlossaTagBuffer buffer = new GlossaTagBuffer();
+		for (int i = 0; i < 100; i++) {
+			buffer.openTag("li");
+			buffer.text(new StringBuilder("item " + i), 0, 4 + Integer.toString(i).length() + 1, GlossaStyle.CODE);
+			buffer.closeTag("li");
+			buffer.br();
+		}
+		assertEquals(400, buffer.size());
+		assertEquals("li", buffer.getElementName(4));
+		assertNull(buffer.getContentSource(4));
+		assertEquals("《text〡code〡content〓item 42》", buffer.getTag(4 * 42 + 1).toString());
+		assertEquals("《/li》", buffer.asList().get(2).toString());
+		assertEquals("《br》", buffer.asList().get(3).toString());
+
+		buffer.reset();
+		assertEquals(0, buffer.size());
+		assertThrows(IndexOutOfBoundsException.class, () -> buffer.getKind(0));
+	}
+
+	@Test
+	void testSteadyStateAllocation() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+		final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		// Backtick runs longer than 127 chars, whose lengths would not be cached
+		// as boxed integers
+		final String ticks = "`".repeat(200);
+		final List<String> lines = Arrays.asList("some **bold** and *italic* with `code`",
+				ticks + " long code " + ticks + " and ``` unmatched", "``a`` ` ``b``` `` *x **y** z*");
+
+		final GlossaTagBuffer buffer = new GlossaTagBuffer();
+		final ParserMarkdown parser = new ParserMarkdown();
+		final int runs = 20_000;
+		// Peekers are built before measuring, only the parser is measured
+		final List<Peeker<String>> peekers = new ArrayList<>(2 * runs);
+		for (int i = 0; i < 2 * runs; i++)
+			peekers.add(PeekerUtils.peeker(lines));
+
+		for (int i = 0; i < runs; i++) {
+			buffer.reset();
+			parser.parse(peekers.get(i), buffer);
+		}
+		final long before = threads.getCurrentThreadAllocatedBytes();
+		for (int i = runs; i < 2 * runs; i++) {
+			buffer.reset();
+			parser.parse(peekers.get(i), buffer);
+		}
+		final long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+		assertTrue(allocated < runs, allocated + " bytes allocated for " + runs + " documents");
+	}
+
+}
@@ -1,6 +1,10 @@
 package com.plantuml.glossa;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
@@ -15,4 +19,65 @@ class GlossaTagTest {
 		assertEquals(expected, tag.toString());
 	}
 
+	@Test
+	void testStylesAndValues() {
+		final GlossaTag tag = new GlossaTag("text").addStyles(GlossaStyle.BOLD | GlossaStyle.WAVE);
+		tag.addMetadata("content", "hello").addMetadata("underline", "#012345").addMetadata("code");
+		assertEquals("《text〡bold〡code〡content〓hello〡underline〓#012345〡wave》", tag.toString());
+		assertEquals(GlossaStyle.BOLD | GlossaStyle.WAVE | GlossaStyle.CODE, tag.getStyles());
+		assertEquals("hello", tag.getMetadata("content"));
+		assertEquals("#012345", tag.getMetadata("underline"));
+
+		tag.addMetadata("wave", "red").addMetadata("underline");
+		assertEquals("《text〡bold〡code〡content〓hello〡underline〡wave〓red》", tag.toString());
+		assertEquals(GlossaStyle.BOLD | GlossaStyle.UNDERLINE | GlossaStyle.CODE, tag.getStyles());
+		assertTrue(tag.hasMetadata("underline"));
+		assertNull(tag.getMetadata("underline"));
+	}
+
+	@Test
+	void testInternedName() {
+		assertSame("text", new GlossaTag(new String("text")).getName());
+		assertSame("br", new GlossaTag(new String("br")).getName());
+		assertSame("custom", new GlossaTag(new String("custom")).getName());
+		assertSame("/custom", new GlossaTag(new String("/custom")).getName());
+	}
+
+	@Test
+	void testContentSpan() {
+		final String line = "say hello world";
+		final GlossaTag tag = new GlossaTag("text").addMetadata("bold").addMetadata("color", "red");
+		tag.setContent(line, 4, 9);
+		assertSame(line, tag.getContentSource());
+		assertEquals(4, tag.getContentStart());
+		assertEquals(9, tag.getContentEnd());
+		assertEquals("hello", tag.getContent());
+		assertEquals("hello", tag.getMetadata("content"));
+		assertEquals("《text〡bold〡color〓red〡content〓hello》", tag.toString());
+
+		tag.addMetadata("content", "bye");
+		assertEquals("《text〡bold〡color〓red〡content〓bye》", tag.toString());
+		assertNull(new GlossaTag("br").getContent());
+
+		// As for any other key, a content added without value has a null value
+		final GlossaTag empty = new GlossaTag("text").addMetadata("content", null);
+		assertTrue(empty.hasMetadata("content"));
+		assertNull(empty.getMetadata("content"));
+		assertEquals("《text〡content》", empty.toString());
+		assertEquals("", new GlossaTag("text").addMetadata("content", "").getMetadata("content"));
+		assertThrows(IndexOutOfBoundsException.class, () -> tag.setContent(line, 10, 20));
+	}
+
+	@Test
+	void testCollectorKeepsSpan() {
+		final String line = "plain **bold**";
+		final GlossaTagCollector collector = new GlossaTagCollector();
+		collector.text(line, 8, 12, GlossaStyle.BOLD);
+		collector.text(new StringBuilder(line), 0, 5, 0);
+		final GlossaTag bold = collector.getTags().get(0);
+		assertSame(line, bold.getContentSource());
+		assertEquals("《text〡bold〡content〓bold》", bold.toString());
+		assertEquals("plain", collector.getTags().get(1).getContentSource());
+	}
+
 }
@@ -0,0 +1,83 @@
+package com.plantuml.glossa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LinePeekerTest {
+
+	private static final String TEXT = "first\r\nsecond **été**\n\n日本語のテキスト\rlast line is much longer than the window";
+
+	private static List<String> lines(Peeker<String> peeker) {
+		final List<String> result = new ArrayList<>();
+		for (; peeker.peek(0) != null; peeker.jump())
+			result.add(peeker.peek(0));
+		return result;
+	}
+
+	private static List<String> expected() {
+		return new BufferedReader(new StringReader(TEXT)).lines().collect(Collectors.toList());
+	}
+
+	@Test
+	void testReader() throws IOException {
+		try (LinePeeker peeker = PeekerUtils.peeker(new StringReader(TEXT))) {
+			assertEquals("last line is much longer than the window", peeker.peek(4));
+			assertNull(peeker.peek(5));
+			assertEquals(expected(), lines(peeker));
+		}
+	}
+
+	@Test
+	void testLookaheadAcrossRing() throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20; i++)
+			sb.append(i).append('\n');
+		try (LinePeeker peeker = PeekerUtils.peeker(new StringReader(sb.toString()))) {
+			for (int i = 0; i < 20; i++) {
+				assertEquals(Integer.toString(i), peeker.peek(0));
+				assertEquals(i + 5 < 20 ? Integer.toString(i + 5) : null, peeker.peek(5));
+				peeker.jump();
+			}
+			assertNull(peeker.peek(0));
+		}
+	}
+
+	@Test
+	void testMappedFile(@TempDir Path dir) throws IOException {
+		final Path file = dir.resolve("doc.md");
+		final byte[] bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+		final byte[] text = TEXT.getBytes(StandardCharsets.UTF_8);
+		final byte[] content = new byte[bom.length + text.length];
+		System.arraycopy(bom, 0, content, 0, bom.length);
+		System.arraycopy(text, 0, content, bom.length, text.length);
+		Files.write(file, content);
+
+		try (LinePeeker peeker = PeekerUtils.peeker(file)) {
+			assertEquals(expected(), lines(peeker));
+		}
+		// Windows smaller than a line, and ending inside "\r\n" or a UTF-8 char
+		for (int window = 4; window < 16; window++)
+			try (LinePeeker peeker = new MappedFilePeeker(file, window)) {
+				assertEquals(expected(), lines(peeker), "window " + window);
+			}
+
+		Files.write(file, new byte[0]);
+		try (LinePeeker peeker = PeekerUtils.peeker(file)) {
+			assertNull(peeker.peek(0));
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.plantuml.glossa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import com.plantuml.glossa.markdown.ParserMarkdown;
+
+class ParallelParserTest {
+
+	@Test
+	void testSameAsSequential() {
+		final List<String> lines = new ArrayList<>();
+		for (int i = 0; i < 20000; i++)
+			lines.add(i % 7 == 0 ? "" : "line " + i + " with **bold** and `code " + i + "`");
+
+		final String expected = new ParserMarkdown().parse(PeekerUtils.peeker(lines)).toString();
+		assertEquals(expected, new ParallelParser(ParserMarkdown::new).parse(lines).toString());
+
+		final ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			assertEquals(expected, new ParallelParser(ParserMarkdown::new, executor).parse(lines).toString());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void testSmallInputs() {
+		final ParallelParser parser = new ParallelParser(ParserMarkdown::new);
+		assertEquals("[]", parser.parse(new ArrayList<>()).toString());
+
+		final List<String> lines = new ArrayList<>();
+		for (int i = 0; i < 3 * ParallelParser.MIN_CHUNK_LINES; i++)
+			lines.add("");
+		assertEquals(new ParserMarkdown().parse(PeekerUtils.peeker(lines)).toString(), parser.parse(lines).toString());
+	}
+
+}
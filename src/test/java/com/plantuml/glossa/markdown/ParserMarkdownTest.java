@@ -1,14 +1,20 @@
 package com.plantuml.glossa.markdown;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
+import com.plantuml.glossa.GlossaHandler;
+import com.plantuml.glossa.GlossaStyle;
 import com.plantuml.glossa.GlossaTag;
+import com.plantuml.glossa.Peeker;
 import com.plantuml.glossa.PeekerUtils;
 
 class ParserMarkdownTest {
@@ -53,4 +59,79 @@ class ParserMarkdownTest {
 				result.toString());
 	}
 
+	@Test
+	void testNestedEmphasis() {
+		String wiki = "*a **b** c* **d*";
+		List<GlossaTag> result = new ParserMarkdown().parse(PeekerUtils.peeker(Arrays.asList(wiki)));
+		assertEquals(
+				"[《text〡content〓a 〡italic》, 《text〡bold〡content〓b〡italic》, 《text〡content〓 c〡italic》, 《text〡content〓 *》, 《text〡content〓d〡italic》]",
+				result.toString());
+	}
+
+	@Test
+	void testCodeSpans() {
+		String wiki = "``a ` *b*`` and ` `` ` x `y";
+		List<GlossaTag> result = new ParserMarkdown().parse(PeekerUtils.peeker(Arrays.asList(wiki)));
+		assertEquals(
+				"[《text〡code〡content〓a ` *b*》, 《text〡content〓 and 》, 《text〡code〡content〓``》, 《text〡content〓 x `y》]",
+				result.toString());
+	}
+
+	@Test
+	void testUnmatchedDelimiters() {
+		String wiki = "2 * 3 * 4 and a**b";
+		List<GlossaTag> result = new ParserMarkdown().parse(PeekerUtils.peeker(Arrays.asList(wiki)));
+		assertEquals("[《text〡content〓2 * 3 * 4 and a**b》]", result.toString());
+	}
+
+	@Test
+	void testLinearTime() {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50000; i++)
+			sb.append("*a `").append(i % 2 == 0 ? "``" : "").append(" **b ");
+		final String wiki = sb.toString();
+		assertTimeout(Duration.ofSeconds(5),
+				() -> new ParserMarkdown().parse(PeekerUtils.peeker(Arrays.asList(wiki))));
+	}
+
+	@Test
+	void testHandler() {
+		List<String> wiki = Arrays.asList("a **b**", "`c`");
+		final StringBuilder events = new StringBuilder();
+		new ParserMarkdown().parse(PeekerUtils.peeker(wiki), new GlossaHandler() {
+			@Override
+			public void text(CharSequence source, int start, int end, int styles) {
+				events.append("[").append(source, start, end).append("/").append(styles).append("]");
+			}
+
+			@Override
+			public void br() {
+				events.append("[br]");
+			}
+
+			@Override
+			public void openTag(String name) {
+			}
+
+			@Override
+			public void closeTag(String name) {
+			}
+		});
+		assertEquals("[a /0][b/" + GlossaStyle.BOLD + "][br][c/" + GlossaStyle.CODE + "]", events.toString());
+	}
+
+	@Test
+	void testIterator() {
+		List<String> wiki = Arrays.asList("hello**world**", "ok *italic*", "", "end");
+		final Peeker<String> peeker = PeekerUtils.peeker(wiki);
+		final Iterator<GlossaTag> it = new ParserMarkdown().iterator(peeker);
+		assertEquals("《text〡content〓hello》", it.next().toString());
+		// Only the first line has been read so far
+		assertEquals("ok *italic*", peeker.peek(0));
+
+		final List<GlossaTag> tags = new ArrayList<>();
+		it.forEachRemaining(tags::add);
+		assertEquals(new ParserMarkdown().parse(PeekerUtils.peeker(wiki)).subList(1, 8).toString(), tags.toString());
+	}
+
 }
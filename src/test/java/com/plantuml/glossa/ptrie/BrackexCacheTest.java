@@ -0,0 +1,58 @@
+package com.plantuml.glossa.ptrie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+public class BrackexCacheTest {
+
+	/**
+	 * Tests the counters and the least recently used eviction.
+	 */
+	@Test
+	public void testEviction() {
+		BrackexCache cache = new BrackexCache(2);
+		BrackexNode a = cache.parse("a〇+b");
+		cache.parse("c");
+		assertSame(a, cache.parse("a〇+b"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+
+		// "c" is the least recently used
+		cache.parse("d");
+		assertEquals(2, cache.size());
+		assertSame(a, cache.parse("a〇+b"));
+		cache.parse("c");
+		assertEquals(4, cache.getMissCount());
+
+		cache.setMaximumSize(0);
+		assertEquals(0, cache.size());
+		assertNotSame(a, cache.parse("a〇+b"));
+	}
+
+	/**
+	 * Tests that the nested tries of unnamed groups are shared between tries, and
+	 * that those holding a named group are not.
+	 */
+	@Test
+	public void testSharedGroups() {
+		PatternTrie first = new PatternTrie();
+		first.addPattern("x〘〇+ab〙y");
+		first.addPattern("〘〘n〡cd〙e〙");
+		PatternTrie second = new PatternTrie();
+		second.addPattern("z〘〇+ab〙");
+		second.addPattern("〘〘n〡cd〙e〙");
+
+		assertSame(group(first.getChild('x')), group(second.getChild('z')));
+		assertNotSame(group(first), group(second));
+		assertEquals("xaaby", first.getLongestMatchStartingIn("xaaby", 0));
+		assertEquals("zab", second.getLongestMatchStartingIn("zab", 0));
+	}
+
+	private static PatternTrie group(PatternTrie node) {
+		return ((GroupPattern) node.getPattern(0)).getGroup();
+	}
+
+}
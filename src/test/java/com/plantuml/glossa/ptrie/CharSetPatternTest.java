@@ -1,5 +1,6 @@
 package com.plantuml.glossa.ptrie;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -38,24 +39,66 @@ public class CharSetPatternTest {
 	}
 
 	/**
-	 * Tests that adding a character outside the valid range throws an
-	 * IllegalArgumentException.
+	 * Tests that control chars and non ASCII chars can be added, and that only
+	 * values that are not code points throw an IllegalArgumentException.
 	 */
 	@Test
-	public void testInvalidAddChar() {
+	public void testAddOutsideAscii() {
 		CharSetPattern pattern = new CharSetPattern();
+		pattern.addChar('\t');
+		pattern.addChar('é');
+		pattern.addRange('一', '鿿');
+		pattern.addCodePoint(0x1F600);
+
+		assertTrue(pattern.contains('\t'));
+		assertTrue(pattern.contains('é'));
+		assertTrue(pattern.contains('字'));
+		assertTrue(pattern.contains(0x1F600));
+		assertFalse(pattern.contains((char) 31));
+		assertFalse(pattern.contains('è'));
+		assertFalse(pattern.contains(0x1F601));
 
-		// Character below 32
 		assertThrows(IllegalArgumentException.class, () -> {
-			pattern.addChar((char) 31);
+			pattern.addCodePoint(-1);
 		});
-
-		// Character above 128
 		assertThrows(IllegalArgumentException.class, () -> {
-			pattern.addChar((char) 129);
+			pattern.addCodePoint(Character.MAX_CODE_POINT + 1);
 		});
 	}
 
+	/**
+	 * Tests that overlapping and adjacent non ASCII ranges are merged correctly.
+	 */
+	@Test
+	public void testMergedRanges() {
+		CharSetPattern pattern = new CharSetPattern();
+		pattern.addRange(300, 310);
+		pattern.addRange(200, 210);
+		pattern.addRange(211, 220);
+		pattern.addRange(205, 305);
+		pattern.addRange(100, 200);
+
+		for (int cp = 100; cp <= 310; cp++)
+			assertTrue(pattern.contains(cp));
+		assertFalse(pattern.contains(99));
+		assertFalse(pattern.contains(311));
+	}
+
+	/**
+	 * Tests that a supplementary code point is matched as a whole surrogate pair.
+	 */
+	@Test
+	public void testSupplementaryMatch() {
+		CharSetPattern emoji = CharSetPattern.build("「😀〜😏」");
+		assertEquals(2, emoji.matches("😃!", 0));
+		assertEquals(2, emoji.matches("😃!".toCharArray(), 0, 3));
+		assertEquals(0, emoji.matches("!😃", 0));
+
+		CharSetPattern other = CharSetPattern.build("「〤a」");
+		assertEquals(2, other.matches("😃", 0));
+		assertEquals(0, other.matches("a", 0));
+	}
+
 	/**
 	 * Tests that calling {@code contains} with a character outside the valid range
 	 * throws an IllegalArgumentException.
@@ -250,4 +293,17 @@ public class CharSetPatternTest {
 		assertFalse(pattern.contains('{'));
 	}
 
+	/**
+	 * Tests a negated set: 「〤a〜c」 accepts every character except 'a', 'b' and
+	 * 'c'.
+	 */
+	@Test
+	public void testBuildNegated() {
+		CharSetPattern pattern = CharSetPattern.build("「〤a〜c」");
+		assertFalse(pattern.contains('a'));
+		assertFalse(pattern.contains('c'));
+		assertTrue(pattern.contains('d'));
+		assertTrue(pattern.contains(' '));
+	}
+
 }
@@ -0,0 +1,58 @@
+package com.plantuml.glossa.ptrie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.CharBuffer;
+
+import org.junit.jupiter.api.Test;
+
+public class FirstCharsTest {
+
+	/**
+	 * Tests the first chars of literal, set, repetition and group edges.
+	 */
+	@Test
+	public void testFirstChars() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("**");
+		trie.addPattern("「0〜9」px");
+		trie.addPattern("〇+〘ab〙c");
+		trie.addPattern("日本");
+		for (FirstChars first : new FirstChars[] { trie.firstChars(), trie.compile().firstChars() }) {
+			assertFalse(first.isAny());
+			for (char ch : "*05a日".toCharArray())
+				assertTrue(first.contains(ch));
+			for (char ch : " b本".toCharArray())
+				assertFalse(first.contains(ch));
+		}
+
+		PatternTrie negated = new PatternTrie();
+		negated.addPattern("「〤 」");
+		assertTrue(negated.firstChars().isAny());
+	}
+
+	/**
+	 * Tests skipping to the next candidate, with one or several first chars.
+	 */
+	@Test
+	public void testNext() {
+		PatternTrie single = new PatternTrie();
+		single.addPattern("`");
+		FirstChars first = single.compile().firstChars();
+		final String text = "plain `code` text";
+		assertEquals(6, first.next(text, 0, text.length()));
+		assertEquals(11, first.next(text, 7, text.length()));
+		assertEquals(10, first.next(text, 7, 10));
+		assertEquals(11, first.next(CharBuffer.wrap(text), 7, text.length()));
+
+		PatternTrie several = new PatternTrie();
+		several.addPattern("*");
+		several.addPattern("`");
+		first = several.firstChars();
+		assertEquals(6, first.next("a *b* `c`", 5, 9));
+		assertEquals(9, first.next("a *b* `c`", 9, 9));
+	}
+
+}
@@ -0,0 +1,174 @@
+package com.plantuml.glossa.ptrie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class PatternAutomatonTest {
+
+	/**
+	 * Tests that the compiled automaton returns the same matches as the trie it
+	 * was built from, for literal, range, repetition and group edges.
+	 */
+	@Test
+	public void testSameResultsAsTrie() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("he");
+		trie.addPattern("hello");
+		trie.addPattern("helium");
+		trie.addPattern("「a〜c」ou");
+		trie.addPattern("x〸yz");
+		trie.addPattern("a〔group1〡〸b〕c");
+		PatternAutomaton automaton = trie.compile();
+
+		String[] inputs = { "hello", "helium", "helix", "hel", "aou", "bou", "dou", "xyz", "xyyyz", "xz", "abbc",
+				"ac", "", "say hello" };
+		for (String input : inputs)
+			for (int pos = 0; pos <= input.length(); pos++)
+				assertEquals(trie.getLongestMatchStartingIn(input, pos),
+						automaton.getLongestMatchStartingIn(input, pos), input + "@" + pos);
+	}
+
+	/**
+	 * Tests literal edges on characters outside the ASCII range.
+	 */
+	@Test
+	public void testNonAsciiLiterals() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("été");
+		trie.addPattern("日本");
+		trie.addPattern("日本語");
+		PatternAutomaton automaton = trie.compile();
+
+		assertEquals("été", automaton.getLongestMatchStartingIn("étés", 0));
+		assertEquals("日本語", automaton.getLongestMatchStartingIn("日本語です", 0));
+		assertEquals("日本", automaton.getLongestMatchStartingIn("日本人", 0));
+		assertEquals("", automaton.getLongestMatchStartingIn("中国", 0));
+	}
+
+	/**
+	 * Tests that patterns added after compilation do not change the automaton.
+	 */
+	@Test
+	public void testCompileIsASnapshot() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("ab");
+		PatternAutomaton automaton = trie.compile();
+		trie.addPattern("abc");
+
+		assertEquals("ab", automaton.getLongestMatchStartingIn("abc", 0));
+		assertEquals("abc", trie.getLongestMatchStartingIn("abc", 0));
+	}
+
+	/**
+	 * Tests that minimization merges common suffixes and keeps every match. Only
+	 * the alternatives of the last pattern share a pattern id.
+	 */
+	@Test
+	public void testMinimize() {
+		PatternTrie trie = new PatternTrie();
+		String[] words = { "note_start", "note_end", "group_start", "group_end", "box", "boxes", "note", "notes",
+				"「a〜c」_start", "x〇+y_end", "【partition〡package】_【start〡end】" };
+		for (String word : words)
+			trie.addPattern(word);
+		PatternAutomaton automaton = trie.compile();
+		PatternAutomaton exact = automaton.minimize(true);
+		PatternAutomaton dawg = automaton.minimize(false);
+		assertTrue(exact.stateCount() < automaton.stateCount());
+		assertTrue(dawg.stateCount() < exact.stateCount());
+
+		String[] inputs = { "note_start", "note_ends", "group_star", "boxes", "notes!", "b_start", "xyy_end", "no", "package_end",
+				"" };
+		MatchResult expected = new MatchResult();
+		MatchResult actual = new MatchResult();
+		for (String input : inputs) {
+			automaton.match(input, 0, expected);
+			exact.match(input, 0, actual);
+			assertEquals(expected.end(), actual.end(), input);
+			assertEquals(expected.patternId(), actual.patternId(), input);
+			assertEquals(automaton.matchLength(input, 0), dawg.matchLength(input, 0), input);
+		}
+		assertThrows(IllegalStateException.class, () -> exact.scanner());
+	}
+
+	/**
+	 * Tests pattern sets where a char may take several edges of a state: the
+	 * trie, the automaton, its minimized form and the NFA must all find the true
+	 * longest match.
+	 */
+	@Test
+	public void testOverlappingEdges() {
+		String[][] patternSets = { { "〸ab", "「a」c" }, { "ay", "「a〜z」x", "abc", "a〸b" },
+				{ "「a〜c」ou", "a〔group1〡〸b〕c" }, { "if", "in", "「a〜z」〇*「a〜z0〜9」", "「0〜9」〇+「0〜9」" },
+				{ "「a〜z」b", "「x〜z」c", "éa", "「à〜ÿ」b", "「é」c", "「〜é」d" }, { "「〤 」x", "ab", "a〇?「a〜b」" } };
+		String[] inputs = { "aab", "aac", "abbc", "ax", "ay", "aou", "abbbc", "if x", "inx1 ", "12a", "1", "éa",
+				"éc", "èb", "ébd", "zc", "yb", " x", "😀x", "aabx", "" };
+
+		MatchResult expected = new MatchResult();
+		MatchResult actual = new MatchResult();
+		for (String[] patterns : patternSets) {
+			PatternTrie trie = new PatternTrie();
+			for (String pattern : patterns)
+				trie.addPattern(pattern);
+			PatternAutomaton automaton = trie.compile();
+			PatternAutomaton minimized = automaton.minimize(true);
+			PatternNfa nfa = trie.compileNfa();
+			for (String input : inputs)
+				for (int pos = 0; pos <= input.length(); pos++) {
+					final String where = String.join(" ", patterns) + " on " + input + "@" + pos;
+					nfa.match(input, pos, expected);
+					trie.match(input, pos, actual);
+					assertEquals(expected.toString(), actual.toString(), where);
+					automaton.match(input, pos, actual);
+					assertEquals(expected.toString(), actual.toString(), where);
+					minimized.match(input, pos, actual);
+					assertEquals(expected.toString(), actual.toString(), where);
+					assertEquals(expected.length(), automaton.matchLength(input.toCharArray(), pos, input.length()),
+							where);
+				}
+		}
+
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("〸ab");
+		trie.addPattern("「a」c");
+		assertEquals(3, trie.matchLength("aab", 0));
+		assertEquals(3, trie.compile().matchLength("aab", 0));
+	}
+
+	/**
+	 * Tests that an automaton whose matches go through the NFA, minimized or not,
+	 * keeps working once its trie is collected.
+	 */
+	@Test
+	public void testTrieCanBeCollected() throws InterruptedException {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("「a〜c」ou");
+		trie.addPattern("a〔group1〡〸b〕c");
+		trie.addPattern("a〸bc");
+		final WeakReference<PatternTrie> reference = new WeakReference<>(trie);
+		final PatternAutomaton automaton = trie.compile();
+		final PatternAutomaton minimized = automaton.minimize(true);
+		trie = null;
+		for (int i = 0; i < 50 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+
+		for (PatternAutomaton each : List.of(automaton, minimized)) {
+			assertEquals("abbbc", each.getLongestMatchStartingIn("abbbcd", 0));
+			assertEquals("aou", each.getLongestMatchStartingIn("aou", 0));
+			final int[] captures = new int[2];
+			assertEquals(4, each.matchLength("abbc", 0, captures));
+			assertEquals(1, captures[0]);
+			assertEquals(3, captures[1]);
+		}
+	}
+
+}
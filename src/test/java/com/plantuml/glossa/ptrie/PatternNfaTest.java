@@ -0,0 +1,129 @@
+package com.plantuml.glossa.ptrie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+public class PatternNfaTest {
+
+	/**
+	 * Tests that the NFA gives the same results as the trie walk when the walk
+	 * never has to choose between edges.
+	 */
+	@Test
+	public void testSameResultsAsTrie() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("he");
+		trie.addPattern("hello");
+		trie.addPattern("「a〜c」ou");
+		trie.addPattern("x〸yz");
+		trie.addPattern("a〔group1〡〸b〕c");
+		PatternNfa nfa = trie.compileNfa();
+
+		String[] inputs = { "hello", "helix", "bou", "dou", "xyyyz", "xz", "abbc", "ac", "" };
+		for (String input : inputs)
+			for (int pos = 0; pos <= input.length(); pos++)
+				assertEquals(trie.getLongestMatchStartingIn(input, pos), nfa.getLongestMatchStartingIn(input, pos),
+						input + "@" + pos);
+	}
+
+	/**
+	 * Tests patterns sharing a prefix, where committing to the first matching edge
+	 * misses the match.
+	 */
+	@Test
+	public void testSharedPrefixes() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("ay");
+		trie.addPattern("「a〜z」x");
+		trie.addPattern("abc");
+		trie.addPattern("a〸b");
+		PatternNfa nfa = trie.compileNfa();
+
+		assertEquals("ax", trie.getLongestMatchStartingIn("ax", 0));
+		assertEquals("ax", nfa.getLongestMatchStartingIn("ax", 0));
+		assertEquals("abb", nfa.getLongestMatchStartingIn("abbc", 0));
+		assertEquals("abc", nfa.getLongestMatchStartingIn("abcd", 0));
+
+		// The literal 'a' of the group pattern hides the range from a walk taking
+		// the first edge
+		PatternTrie groups = new PatternTrie();
+		groups.addPattern("「a〜c」ou");
+		groups.addPattern("a〔group1〡〸b〕c");
+		assertEquals("aou", groups.getLongestMatchStartingIn("aou", 0));
+		assertEquals("aou", groups.compileNfa().getLongestMatchStartingIn("aou", 0));
+
+		MatchResult result = new MatchResult();
+		nfa.match("ay", 0, result);
+		assertEquals("ay", result.pattern());
+		nfa.match("bx", 0, result);
+		assertEquals("「a〜z」x", result.pattern());
+	}
+
+	/**
+	 * Tests that nested repetitions, which make a backtracking matcher explode,
+	 * are matched in linear time.
+	 */
+	@Test
+	public void testNoBacktracking() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("〔g1〡〸a〕〔g2〡〸a〕〔g3〡〸a〕〔g4〡〸a〕b");
+		PatternNfa nfa = trie.compileNfa();
+		String input = "a".repeat(20000);
+
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+			assertEquals(0, nfa.matchLength(input, 0));
+			assertEquals(20001, nfa.matchLength(input + "b", 0));
+		});
+	}
+
+	/**
+	 * Tests that alternatives, optional parts and nested repetitions keep the
+	 * trie and the NFA linear in the size of the pattern, so that building and
+	 * matching stay fast whatever their nesting.
+	 */
+	@Test
+	public void testPathologicalNesting() {
+		String[] patterns = { "【a〡b】".repeat(11), "【a〡b】".repeat(400), "〇?a".repeat(400),
+				"【〇?a〡〇?b】".repeat(200), "〇*〘〇*〘〇*a〙〙b", "【【a〡b】【a〡b】〡【ab〡ba】〇?c】".repeat(100),
+				"〇{1,50}〘【a〡b】〇?【c〡d】〙".repeat(20) };
+		String[] inputs = { "ab".repeat(300), "a".repeat(5000), "a".repeat(5000) + "b", "abcbad".repeat(100),
+				"abc".repeat(200) };
+
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			for (String pattern : patterns) {
+				PatternTrie trie = new PatternTrie();
+				trie.addPattern(pattern);
+				PatternNfa nfa = trie.compileNfa();
+				// Within a constant factor of the estimate bounded by BrackexParser
+				int estimate = BrackexParser.parse(pattern).stateCount();
+				assertTrue(nfa.stateCount() < 8 * estimate, pattern + ": " + nfa.stateCount() + " states");
+				PatternAutomaton automaton = trie.compile();
+				for (String input : inputs) {
+					int expected = nfa.matchLength(input, 0);
+					assertEquals(expected, trie.matchLength(input, 0), pattern + " on " + input);
+					assertEquals(expected, automaton.matchLength(input, 0), pattern + " on " + input);
+				}
+			}
+		});
+
+		PatternTrie alternatives = new PatternTrie();
+		alternatives.addPattern("【a〡b】".repeat(400));
+		assertEquals(400, alternatives.matchLength("ab".repeat(300), 0));
+		assertEquals(0, alternatives.matchLength("ab".repeat(199), 0));
+
+		PatternTrie optional = new PatternTrie();
+		optional.addPattern("〇?a".repeat(400));
+		assertEquals(400, optional.compile().matchLength("a".repeat(5000), 0));
+
+		PatternTrie nested = new PatternTrie();
+		nested.addPattern("〇*〘〇*〘〇*a〙〙b");
+		assertEquals(0, nested.matchLength("a".repeat(5000), 0));
+		assertEquals(5001, nested.matchLength("a".repeat(5000) + "b", 0));
+	}
+
+}
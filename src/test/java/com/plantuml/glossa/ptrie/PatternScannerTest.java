@@ -0,0 +1,100 @@
+package com.plantuml.glossa.ptrie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class PatternScannerTest {
+
+	private static List<String> scan(PatternAutomaton automaton, String text) {
+		final List<String> result = new ArrayList<>();
+		automaton.scanner().scan(text,
+				(start, end, patternId) -> result.add(start + "-" + end + ":" + automaton.pattern(patternId)));
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Tests that every occurrence of every literal pattern is reported, including
+	 * overlapping ones and patterns that are suffixes of others.
+	 */
+	@Test
+	public void testLiteralPatterns() {
+		String[] words = { "he", "she", "his", "hers", "*", "**", "***" };
+		PatternTrie trie = new PatternTrie();
+		for (String word : words)
+			trie.addPattern(word);
+
+		String text = "ushers say **hishe*****";
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < text.length(); i++)
+			for (String word : words)
+				if (text.startsWith(word, i))
+					expected.add(i + "-" + (i + word.length()) + ":" + word);
+		Collections.sort(expected);
+
+		assertEquals(expected, scan(trie.compile(), text));
+	}
+
+	/**
+	 * Tests patterns with char set and repetition edges, both at the root and
+	 * after a literal prefix.
+	 */
+	@Test
+	public void testPatternEdges() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("he〸lo");
+		trie.addPattern("「0〜9」〸x");
+		trie.addPattern("lo");
+
+		assertEquals(List.of("10-12:「0〜9」〸x", "13-18:he〸lo", "16-18:lo", "4-9:he〸lo", "7-9:lo"),
+				scan(trie.compile(), "say hello 1x hello"));
+	}
+
+	/**
+	 * Tests a repetition whose set holds the char following it: every start of
+	 * the word is reported.
+	 */
+	@Test
+	public void testOverlappingRepetition() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("〇+「a〜z」s");
+		assertEquals(List.of("0-4:〇+「a〜z」s", "1-4:〇+「a〜z」s", "2-4:〇+「a〜z」s", "5-9:〇+「a〜z」s",
+				"6-9:〇+「a〜z」s", "7-9:〇+「a〜z」s"), scan(trie.compile(), "cats dogs"));
+	}
+
+	/**
+	 * Tests a pattern whose alternatives share a single edge past the branch
+	 * limit: it is reported at every start, like its expanded form.
+	 */
+	@Test
+	public void testJoinedAlternatives() {
+		final String pattern = "【a〡b】".repeat(11);
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern(pattern);
+		assertEquals(List.of("0-11:" + pattern, "1-12:" + pattern), scan(trie.compile(), "abababababab c"));
+	}
+
+	/**
+	 * Tests that the scan stays within the given range.
+	 */
+	@Test
+	public void testRange() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("ab");
+		trie.addPattern("a〸b");
+		PatternAutomaton automaton = trie.compile();
+
+		List<String> result = new ArrayList<>();
+		automaton.scanner().scan("abbab", 1, 4, (start, end, patternId) -> result.add(start + "-" + end));
+		assertEquals(List.of(), result);
+
+		automaton.scanner().scan("abbab", 0, 2, (start, end, patternId) -> result.add(start + "-" + end));
+		assertEquals(List.of("0-2", "0-2"), result);
+	}
+
+}
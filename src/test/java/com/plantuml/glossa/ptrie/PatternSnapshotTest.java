@@ -0,0 +1,106 @@
+package com.plantuml.glossa.ptrie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PatternSnapshotTest {
+
+	/**
+	 * Tests that a mapped snapshot returns the same matches as the automaton.
+	 */
+	@Test
+	public void testSameResultsAsAutomaton(@TempDir Path dir) throws IOException {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("he");
+		trie.addPattern("hello");
+		trie.addPattern("「a〜c」ou");
+		trie.addPattern("日本「語人」");
+		trie.addPattern("【note〡group】_【start〡end】");
+		PatternAutomaton automaton = trie.compile();
+
+		final Path file = dir.resolve("trie.bin");
+		try (OutputStream os = Files.newOutputStream(file)) {
+			automaton.writeSnapshot(os);
+		}
+		PatternSnapshot snapshot = PatternSnapshot.map(file);
+		assertEquals(automaton.stateCount(), snapshot.stateCount());
+
+		String[] inputs = { "hello", "help", "bou", "dou", "日本語", "日本人!", "日本", "group_end", "note_sta", "" };
+		MatchResult expected = new MatchResult();
+		MatchResult actual = new MatchResult();
+		for (String input : inputs) {
+			automaton.match(input, 0, expected);
+			snapshot.match(input, 0, actual);
+			assertEquals(expected.toString(), actual.toString(), input);
+			assertEquals(automaton.getLongestMatchStartingIn(input, 0), snapshot.getLongestMatchStartingIn(input, 0));
+		}
+	}
+
+	/**
+	 * Tests that variable-length edges, negated sets and foreign data are
+	 * rejected.
+	 */
+	@Test
+	public void testRejected() throws IOException {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("a〇+b");
+		assertThrows(IllegalStateException.class, () -> trie.compile().writeSnapshot(new ByteArrayOutputStream()));
+
+		PatternTrie negated = new PatternTrie();
+		negated.addPattern("「〤 」x");
+		final IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> negated.compile().writeSnapshot(new ByteArrayOutputStream()));
+		assertTrue(e.getMessage().contains("negated set"), e.getMessage());
+
+		PatternTrie literal = new PatternTrie();
+		literal.addPattern("ab");
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		literal.compile().writeSnapshot(out);
+		final byte[] bytes = out.toByteArray();
+		assertEquals(2, PatternSnapshot.load(ByteBuffer.wrap(bytes)).matchLength("abc", 0));
+
+		bytes[7]++;
+		assertThrows(IllegalArgumentException.class, () -> PatternSnapshot.load(ByteBuffer.wrap(bytes)));
+		assertThrows(IllegalArgumentException.class, () -> PatternSnapshot.load(ByteBuffer.wrap(new byte[3])));
+	}
+
+	/**
+	 * Tests that counts not matching the size of the data are rejected when
+	 * loading, rather than failing while matching.
+	 */
+	@Test
+	public void testCorruptedCounts() throws IOException {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("ab");
+		trie.addPattern("「x〜z」c");
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		trie.compile().writeSnapshot(out);
+		final byte[] bytes = out.toByteArray();
+		final PatternSnapshot snapshot = PatternSnapshot.load(ByteBuffer.wrap(bytes));
+		assertThrows(IndexOutOfBoundsException.class, () -> snapshot.pattern(2));
+
+		assertThrows(IllegalArgumentException.class,
+				() -> PatternSnapshot.load(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1))));
+		// States, classes, rows, sparse edges, sets and sources
+		for (int offset = 8; offset < 32; offset += 4)
+			for (int value : new int[] { -1, Integer.MAX_VALUE, 1 << 20 }) {
+				final ByteBuffer corrupted = ByteBuffer.wrap(bytes.clone());
+				corrupted.putInt(offset, value);
+				assertThrows(IllegalArgumentException.class, () -> PatternSnapshot.load(corrupted),
+						offset + "=" + value);
+			}
+	}
+
+}
@@ -0,0 +1,190 @@
+package com.plantuml.glossa.ptrie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class PatternTrieBrackexTest {
+
+	private static PatternTrie trie(String pattern) {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern(pattern);
+		return trie;
+	}
+
+	/**
+	 * Tests the basic quantifiers 〇?, 〇* and 〇+.
+	 */
+	@Test
+	public void testBasicQuantifiers() {
+		PatternTrie optional = trie("colo〇?ur");
+		assertEquals("color", optional.getLongestMatchStartingIn("color", 0));
+		assertEquals("colour", optional.getLongestMatchStartingIn("colour", 0));
+		assertEquals("", optional.getLongestMatchStartingIn("colouur", 0));
+
+		PatternTrie star = trie("a〇*bc");
+		assertEquals("ac", star.getLongestMatchStartingIn("ac", 0));
+		assertEquals("abbbc", star.getLongestMatchStartingIn("abbbc", 0));
+
+		PatternTrie plus = trie("a〇+bc");
+		assertEquals("", plus.getLongestMatchStartingIn("ac", 0));
+		assertEquals("abbc", plus.getLongestMatchStartingIn("abbc", 0));
+	}
+
+	/**
+	 * Tests the numeric quantifiers, on the trie and on the NFA.
+	 */
+	@Test
+	public void testNumericQuantifiers() {
+		PatternTrie exact = trie("〇{2}a");
+		assertEquals("", exact.getLongestMatchStartingIn("a", 0));
+		assertEquals("aa", exact.getLongestMatchStartingIn("aaa", 0));
+
+		for (String pattern : new String[] { "x〇{1-3}ay", "x〇{1,3}ay" }) {
+			PatternTrie range = trie(pattern);
+			PatternNfa nfa = range.compileNfa();
+			assertEquals("", nfa.getLongestMatchStartingIn("xy", 0));
+			assertEquals("xay", nfa.getLongestMatchStartingIn("xay", 0));
+			assertEquals("xaaay", nfa.getLongestMatchStartingIn("xaaay", 0));
+			assertEquals("", nfa.getLongestMatchStartingIn("xaaaay", 0));
+			assertEquals("xaaay", range.getLongestMatchStartingIn("xaaay", 0));
+			assertEquals("", range.getLongestMatchStartingIn("xaaaay", 0));
+		}
+	}
+
+	/**
+	 * Tests repetitions of a set holding the char that follows them, which must
+	 * give chars back, on the trie, the automaton and the builder.
+	 */
+	@Test
+	public void testOverlappingRepetitions() {
+		String[][] cases = { { "〇*「a〜z」s", "cats", "cats" }, { "〇+「a〜z」ing", "singing!", "singing" },
+				{ "〇{2,4}「0〜9」5", "1235", "1235" }, { "〇{2,4}「0〜9」5", "123455", "12345" },
+				{ "x〇*「ab」b", "xababa", "xabab" }, { "〇+〴w〇?s", "cats", "cats" },
+				{ "〇+〘〇+「a〜z」〙z", "abzz", "abzz" } };
+		for (String[] c : cases) {
+			PatternTrie trie = trie(c[0]);
+			assertEquals(c[2], trie.getLongestMatchStartingIn(c[1], 0), c[0]);
+			assertEquals(c[2], trie.compile().getLongestMatchStartingIn(c[1], 0), c[0]);
+			assertEquals(c[2], new PatternTrieBuilder().add(c[0]).build().getLongestMatchStartingIn(c[1], 0), c[0]);
+			assertEquals(c[2], trie.compileNfa().getLongestMatchStartingIn(c[1], 0), c[0]);
+			assertEquals(c[2].length(), trie.matchLength(c[1].toCharArray(), 0, c[1].length()), c[0]);
+		}
+
+		PatternTrie word = trie("〘stem〡〇+〴w〙s");
+		final int[] captures = new int[2];
+		assertEquals(4, word.matchLength("cats", 0, captures));
+		assertEquals(0, captures[0]);
+		assertEquals(3, captures[1]);
+		assertEquals(4, word.compile().matchLength("cats", 0, captures));
+		assertEquals(3, captures[1]);
+	}
+
+	/**
+	 * Tests alternatives, including quantified ones, as in brackex.md.
+	 */
+	@Test
+	public void testAlternatives() {
+		PatternTrie trie = trie("a【<〡/〡\\】c");
+		assertEquals("a<c", trie.getLongestMatchStartingIn("a<c", 0));
+		assertEquals("a/c", trie.getLongestMatchStartingIn("a/c", 0));
+		assertEquals("a\\c", trie.getLongestMatchStartingIn("a\\c", 0));
+		assertEquals("", trie.getLongestMatchStartingIn("a-c", 0));
+
+		PatternTrie arrows = trie("a【〇{1-2}<〡〇{1-2}/】c");
+		assertEquals("a<<c", arrows.getLongestMatchStartingIn("a<<c", 0));
+		assertEquals("a/c", arrows.getLongestMatchStartingIn("a/c", 0));
+		assertEquals("", arrows.getLongestMatchStartingIn("a<<<c", 0));
+	}
+
+	/**
+	 * Tests named and unnamed groups, with both the documented and the legacy
+	 * brackets.
+	 */
+	@Test
+	public void testGroups() {
+		for (String pattern : new String[] { "a〘〇+b〙c", "a〘group1〡〇+b〙c", "a〔group1〡〸b〕c" }) {
+			PatternTrie trie = trie(pattern);
+			assertEquals("abbc", trie.getLongestMatchStartingIn("abbc", 0));
+			assertEquals("", trie.getLongestMatchStartingIn("ac", 0));
+		}
+		PatternTrie repeated = trie("〇+〘ab〙!");
+		assertEquals("ababab!", repeated.getLongestMatchStartingIn("ababab!", 0));
+
+		PatternTrie optional = trie("x〘〇?y〙z");
+		assertEquals("xz", optional.getLongestMatchStartingIn("xz", 0));
+		assertEquals("xyz", optional.getLongestMatchStartingIn("xyz", 0));
+	}
+
+	/**
+	 * Tests negated sets and the predefined classes.
+	 */
+	@Test
+	public void testSetsAndClasses() {
+		PatternTrie negated = trie("「〤a〜c」〇*「〤 」");
+		assertEquals("", negated.getLongestMatchStartingIn("abc", 0));
+		assertEquals("xyz", negated.getLongestMatchStartingIn("xyz end", 0));
+
+		PatternTrie number = trie("#〇+〴d");
+		assertEquals("#123", number.getLongestMatchStartingIn("#123a", 0));
+
+		PatternTrie word = trie("〇+〴w");
+		assertEquals("snake_case1", word.getLongestMatchStartingIn("snake_case1-x", 0));
+	}
+
+	/**
+	 * Tests the Unicode classes, on the trie, the automaton and the NFA.
+	 */
+	@Test
+	public void testUnicodeClasses() {
+		PatternTrie name = trie("@〇+〴_-an");
+		final String text = "@東京_café-2😀";
+		assertEquals("@東京_café-2", name.getLongestMatchStartingIn(text, 0));
+		assertEquals("@東京_café-2", name.compile().getLongestMatchStartingIn(text, 0));
+		assertEquals("@東京_café-2", name.compileNfa().getLongestMatchStartingIn(text, 0));
+
+		PatternTrie quoted = trie("〴\"〇+「〤“”\"」〴\"");
+		assertEquals("“a b”", quoted.getLongestMatchStartingIn("“a b” c", 0));
+		assertEquals("\"x\"", quoted.compile().getLongestMatchStartingIn("\"x\"", 0));
+
+		PatternTrie spaced = trie("a〇+〴sb");
+		assertEquals("a \t\nb", spaced.getLongestMatchStartingIn("a \t\nb", 0));
+
+		PatternTrie emoji = trie("〇+「〤 !」!");
+		assertEquals("😀x😀!", emoji.compile().getLongestMatchStartingIn("😀x😀! ", 0));
+		assertEquals("😀x😀!", emoji.compileNfa().getLongestMatchStartingIn("😀x😀! ", 0));
+	}
+
+	/**
+	 * Tests that malformed patterns are rejected.
+	 */
+	@Test
+	public void testErrors() {
+		for (String pattern : new String[] { "a〇", "a〇!b", "〇{3-1}a", "〇{2a", "「ab", "〘ab", "【a〡b", "a】", "〴z",
+				"〇{2000}a" })
+			assertThrows(IllegalArgumentException.class, () -> trie(pattern), pattern);
+	}
+
+	/**
+	 * Tests that nested repetitions, which are unrolled into NFA states, are
+	 * rejected when they would need too many states.
+	 */
+	@Test
+	public void testNestedRepetitionLimit() {
+		for (String pattern : new String[] { "〇{1000}〘〇{1000}a〙", "〇{1000}〘〇{1000}〘〇{1000}a〙〙",
+				"〇+〘〇{100}〘〇{1000}a〙〙" }) {
+			IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+					() -> new PatternTrie().addPattern(pattern), pattern);
+			assertTrue(e.getMessage().contains("states"), e.getMessage());
+		}
+
+		PatternTrie trie = trie("〇{1000}a");
+		trie.addPattern("〇{1,30}〘〇{1,30}b〇?c〙");
+		assertTrue(trie.compileNfa().stateCount() < 2 * BrackexParser.MAX_STATES);
+		assertEquals(1000, trie.matchLength("a".repeat(1200), 0));
+		assertEquals(90, trie.matchLength("bbc".repeat(300), 0));
+	}
+
+}
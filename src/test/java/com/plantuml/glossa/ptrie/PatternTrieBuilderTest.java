@@ -0,0 +1,52 @@
+package com.plantuml.glossa.ptrie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+public class PatternTrieBuilderTest {
+
+	/**
+	 * Tests that one automaton, published through a plain field, gives the same
+	 * results to many threads matching at the same time.
+	 */
+	@Test
+	public void testConcurrentMatching() throws Exception {
+		final PatternAutomaton automaton = new PatternTrieBuilder().add("***").add("**").add("*").add("`")
+				.add("〘name〡〇+〴w〙=").add("「a〜c」〇*x").build();
+		final String text = "a **bold** `code` key=value ***all*** bxxx*";
+		final int[] expected = new int[text.length()];
+		for (int pos = 0; pos < text.length(); pos++)
+			expected[pos] = automaton.matchLength(text, pos);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0; t < 32; t++)
+				futures.add(executor.submit(() -> {
+					final MatchResult result = new MatchResult();
+					final int[] captures = new int[2];
+					int errors = 0;
+					for (int round = 0; round < 2000; round++)
+						for (int pos = 0; pos < text.length(); pos++) {
+							automaton.match(text, pos, result);
+							if (result.length() != expected[pos]
+									|| automaton.matchLength(text, pos, captures) != expected[pos])
+								errors++;
+						}
+					return errors;
+				}));
+			for (Future<Integer> future : futures)
+				assertEquals(0, future.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.plantuml.glossa.ptrie;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class PatternTrieCaptureTest {
+
+	/**
+	 * Tests that named groups report their span, on the trie and the automaton.
+	 */
+	@Test
+	public void testNamedGroups() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("[[〘target〡〇+「〤]|」〙|〘label〡〇+「〤]」〙]]");
+		trie.addPattern("<color:〘color〡〇+〴w〙>");
+		assertEquals(3, trie.groupCount());
+		final int target = trie.getGroupId("target");
+		final int label = trie.getGroupId("label");
+		final int color = trie.getGroupId("color");
+		assertEquals(-1, trie.getGroupId("missing"));
+
+		final int[] captures = new int[2 * trie.groupCount()];
+		final String link = "see [[page|the page]] now";
+		assertEquals(17, trie.matchLength(link, 4, captures));
+		assertEquals("page", link.substring(captures[2 * target], captures[2 * target + 1]));
+		assertEquals("the page", link.substring(captures[2 * label], captures[2 * label + 1]));
+		assertEquals(-1, captures[2 * color]);
+
+		PatternAutomaton automaton = trie.compile();
+		assertEquals(color, automaton.getGroupId("color"));
+		final String tag = "<color:red>";
+		assertEquals(11, automaton.matchLength(tag, 0, captures));
+		assertArrayEquals(new int[] { -1, -1, -1, -1, 7, 10 }, captures);
+	}
+
+	/**
+	 * Tests that a failed match leaves every group empty.
+	 */
+	@Test
+	public void testNoMatch() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("a〘x〡〇+b〙c");
+		final int[] captures = new int[2];
+		assertEquals(0, trie.matchLength("abbd", 0, captures));
+		assertArrayEquals(new int[] { -1, -1 }, captures);
+		assertEquals(4, trie.matchLength("abbc", 0, captures));
+		assertArrayEquals(new int[] { 1, 3 }, captures);
+		assertThrows(IllegalArgumentException.class, () -> trie.matchLength("abbc", 0, new int[1]));
+	}
+
+}
@@ -0,0 +1,126 @@
+package com.plantuml.glossa.ptrie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+public class PatternTrieMatchResultTest {
+
+	private static PatternTrie styles() {
+		PatternTrie trie = new PatternTrie();
+		trie.addPattern("***");
+		trie.addPattern("**");
+		trie.addPattern("*");
+		trie.addPattern("「a〜c」〸x");
+		return trie;
+	}
+
+	/**
+	 * Tests matchLength() on the trie and on its compiled form, with a String and
+	 * with a StringBuilder.
+	 */
+	@Test
+	public void testMatchLength() {
+		PatternTrie trie = styles();
+		PatternAutomaton automaton = trie.compile();
+
+		for (CharSequence text : new CharSequence[] { "a **b", new StringBuilder("a **b") }) {
+			assertEquals(0, trie.matchLength(text, 0));
+			assertEquals(2, trie.matchLength(text, 2));
+			assertEquals(1, trie.matchLength(text, 3));
+			assertEquals(0, automaton.matchLength(text, 0));
+			assertEquals(2, automaton.matchLength(text, 2));
+			assertEquals(1, automaton.matchLength(text, 3));
+		}
+		assertEquals(4, trie.matchLength("bxxx!", 0));
+		assertEquals(4, automaton.matchLength("bxxx!", 0));
+	}
+
+	/**
+	 * Tests that a reused MatchResult reports the offsets and the pattern that
+	 * matched, and is cleared when nothing matches.
+	 */
+	@Test
+	public void testMatchResult() {
+		PatternTrie trie = styles();
+		MatchResult result = new MatchResult();
+
+		assertTrue(trie.match("x***y", 1, result));
+		assertEquals(1, result.start());
+		assertEquals(4, result.end());
+		assertEquals(0, result.patternId());
+		assertEquals("***", result.pattern());
+
+		assertTrue(trie.compile().match("cx", 0, result));
+		assertEquals(2, result.length());
+		assertEquals(3, result.patternId());
+		assertEquals("「a〜c」〸x", result.pattern());
+
+		assertFalse(trie.match("x***y", 0, result));
+		assertEquals(0, result.length());
+		assertEquals(-1, result.patternId());
+		assertNull(result.pattern());
+	}
+
+	/**
+	 * Tests matching in place on a char[] range and on a CharBuffer, which must
+	 * give the same results as on a String.
+	 */
+	@Test
+	public void testCharArrayAndCharBuffer() {
+		PatternTrie trie = styles();
+		PatternAutomaton automaton = trie.compile();
+		String text = "**bxx*";
+		char[] chars = ("##" + text + "##").toCharArray();
+		CharBuffer buffer = CharBuffer.wrap(chars, 2, text.length()).slice();
+
+		for (int pos = 0; pos <= text.length(); pos++) {
+			int expected = trie.matchLength(text, pos);
+			assertEquals(expected, trie.matchLength(chars, pos + 2, text.length() + 2), text + "@" + pos);
+			assertEquals(expected, automaton.matchLength(chars, pos + 2, text.length() + 2), text + "@" + pos);
+			assertEquals(expected, trie.matchLength(buffer, pos), text + "@" + pos);
+			assertEquals(expected, automaton.matchLength(buffer, pos), text + "@" + pos);
+		}
+		// The end of the range is honoured even when the array goes on
+		assertEquals(1, trie.matchLength(chars, 2, 3));
+		assertEquals(1, automaton.matchLength(chars, 2, 3));
+	}
+
+	/**
+	 * Tests that matching a char[] range allocates nothing once warmed up, even
+	 * when the match goes on in the NFA.
+	 */
+	@Test
+	public void testCharArrayAllocation() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		PatternTrie trie = styles();
+		trie.addPattern("〇*「a〜z」s");
+		PatternAutomaton automaton = trie.compile();
+		char[] chars = "# cats **b".toCharArray();
+		int runs = 20_000;
+		for (int i = 0; i < runs; i++)
+			assertEquals(8, trie.matchLength(chars, 2, 8) + automaton.matchLength(chars, 2, 8));
+		int total = 0;
+		long before = threads.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < runs; i++)
+			total += trie.matchLength(chars, 2, 8) + automaton.matchLength(chars, 2, 8);
+		long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+		assertEquals(runs * 8, total);
+		assertTrue(allocated < runs, allocated + " bytes allocated for " + runs + " matches");
+	}
+
+}
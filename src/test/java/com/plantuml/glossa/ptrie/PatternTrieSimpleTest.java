@@ -98,4 +98,23 @@ public class PatternTrieSimpleTest {
 		// Starting at an index equal to the text length should return an empty string.
 		assertEquals("", trie.getLongestMatchStartingIn(text, text.length()));
 	}
+
+	/**
+	 * Tests nodes with a growing number of children, so that every child layout
+	 * (inline, sorted and hashed) is exercised.
+	 */
+	@Test
+	public void testWideFanOut() {
+		PatternTrie trie = new PatternTrie();
+		for (char ch = 'A'; ch <= 'z'; ch++) {
+			trie.addPattern("k" + ch);
+			trie.addPattern("k" + ch + "一" + ch);
+			for (char prev = 'A'; prev <= ch; prev++) {
+				assertEquals("k" + prev, trie.getLongestMatchStartingIn("k" + prev + "!", 0));
+				assertEquals("k" + prev + "一" + prev, trie.getLongestMatchStartingIn("k" + prev + "一" + prev, 0));
+			}
+		}
+		assertEquals("", trie.getLongestMatchStartingIn("k一", 0));
+		assertEquals("", trie.getLongestMatchStartingIn("k", 0));
+	}
 }